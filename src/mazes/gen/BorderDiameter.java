@@ -0,0 +1,124 @@
+package mazes.gen;
+
+import java.util.Arrays;
+
+import mazes.util.ChunkedIntArray;
+import mazes.util.IntStorage;
+
+// The entrance and exit of a finished perfect maze chosen by path length:
+// the two border cells farthest apart through the maze. A perfect maze is a
+// tree, and in a tree the member of a set of cells farthest from any other
+// member is an end of the set's longest path, so two walks find both ends:
+// one from any cell to the farthest border cell, and one from there to the
+// border cell farthest from it. If that cell is on one line with the first
+// end (which generate3DMaze would reject as too close), the next best pair
+// is taken instead, so the maze never has to be thrown away: the farthest
+// cell from either end that isn't on one line with it, which takes a third
+// walk.
+public final class BorderDiameter {
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	private final long[] neighborOffsets;
+	// Indexed like the wall grid: the distance from the start of the current
+	// walk, -1 for cells it hasn't reached, and -2 for the padding, which
+	// is never entered
+	private final IntStorage distances;
+	private long[] stack = new long[64];
+	private final int[] cell;
+	private final int[] avoidCell;
+	// Set by findFarthest(): the distance to the cell it returned, and the
+	// farthest cell it skipped for being in line, if that was farther
+	private int farthestDistance;
+	private long skippedCell;
+	
+	private BorderDiameter(WallGrid walls) {
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.neighborOffsets = new long[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			neighborOffsets[2 * d] = -walls.getStride(d);
+			neighborOffsets[2 * d + 1] = walls.getStride(d);
+		}
+		this.distances = new ChunkedIntArray(walls.getIndexCount());
+		this.cell = new int[dimensionCount];
+		this.avoidCell = new int[dimensionCount];
+	}
+	
+	// Both ends, by wall grid index, first the one found from the start
+	public static long[] find(WallGrid walls, long start) {
+		if (!walls.isInterior(start)) throw new IndexOutOfBoundsException();
+		BorderDiameter diameter = new BorderDiameter(walls);
+		long first = diameter.findFarthest(start, -1);
+		long second = diameter.findFarthest(first, first);
+		long skipped = diameter.skippedCell;
+		if (skipped != -1) {
+			int distance = diameter.farthestDistance;
+			long other = diameter.findFarthest(skipped, skipped);
+			if (diameter.farthestDistance > distance) return new long[] {skipped, other};
+		}
+		return new long[] {first, second};
+	}
+	
+	// Walks the maze from the start and returns the farthest border cell
+	// (the one with the highest index among equally distant ones, as the
+	// generator's exit is) that isn't on one line with avoid, or, if every
+	// border cell is, the farthest of those. With an avoid of -1, any
+	// border cell will do.
+	private long findFarthest(long start, long avoid) {
+		if (avoid != -1) {
+			walls.getCoordinates(avoid, avoidCell);
+		}
+		distances.fill(-2);
+		walls.getInteriorCells().forEachRemaining((long index) -> distances.set(index, -1));
+		long farthest = -1;
+		int farthestDistance = -1;
+		long farthestInLine = -1;
+		int farthestInLineDistance = -1;
+		int stackSize = 0;
+		stack[stackSize++] = start;
+		distances.set(start, 0);
+		while (stackSize > 0) {
+			long index = stack[--stackSize];
+			int distance = distances.get(index);
+			if ((distance > farthestDistance || distance == farthestDistance && index > farthest) && walls.isInsideBorder(index)) {
+				if (avoid == -1 || !isInLine(index)) {
+					farthest = index;
+					farthestDistance = distance;
+				}
+				else if (distance > farthestInLineDistance || distance == farthestInLineDistance && index > farthestInLine) {
+					farthestInLine = index;
+					farthestInLineDistance = distance;
+				}
+			}
+			for (int direction=0; direction<neighborOffsets.length; direction++) {
+				long neighbor = index + neighborOffsets[direction];
+				if (distances.get(neighbor) != -1 || walls.getWall(index, direction >> 1, (direction & 1) != 0)) continue;
+				distances.set(neighbor, distance + 1);
+				if (stackSize == stack.length) {
+					stack = Arrays.copyOf(stack, stackSize * 2);
+				}
+				stack[stackSize++] = neighbor;
+			}
+		}
+		if (farthest == -1) {
+			farthest = farthestInLine;
+			farthestDistance = farthestInLineDistance;
+		}
+		this.farthestDistance = farthestDistance;
+		this.skippedCell = farthestInLineDistance > farthestDistance ? farthestInLine : -1;
+		return farthest;
+	}
+	// Whether the cell differs from avoid in at most one coordinate
+	private boolean isInLine(long index) {
+		walls.getCoordinates(index, cell);
+		int differences = 0;
+		for (int d=0; d<dimensionCount; d++) {
+			if (cell[d] != avoidCell[d]) {
+				differences += 1;
+			}
+		}
+		return differences <= 1;
+	}
+	
+}
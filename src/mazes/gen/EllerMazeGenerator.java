@@ -0,0 +1,217 @@
+package mazes.gen;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import mazes.util.CellSpliterator;
+import mazes.util.Direction;
+import mazes.util.MultiDimensionalArray;
+
+// Eller's algorithm, which builds a perfect maze one layer at a time: a row
+// in 2D, a layer of constant z in 3D, and in general a slice across the last
+// dimension. Only the current layer's sets are kept, so memory grows with
+// the size of a layer rather than the whole maze, and each layer is handed
+// out as soon as it is finished.
+//
+// Within a layer, neighboring cells of different sets are joined at random
+// (every such pair, in the last layer, which connects the whole maze). Each
+// set then opens at least one cell into the next layer, and the cells there
+// start in the same set. Sets are kept in a union-find over the layer's
+// cells, relabeled for each layer by their roots.
+//
+// Layers come out as CellWalls arrays over the first dimensionCount - 1
+// dimensions, with walls for every direction, so the walls towards the last
+// dimension agree between consecutive layers. The entrance is below the
+// first cell of the first layer, and the exit above a random cell of the
+// last.
+public final class EllerMazeGenerator implements Iterator<MultiDimensionalArray<CellWalls>> {
+	
+	private final int[] sideLengths;
+	private final int dimensionCount;
+	private final int layerDimension;
+	private final int[] layerSideLengths;
+	private final int[] layerStrides;
+	private final int layerCellCount;
+	// Chance of joining neighboring sets within a layer, and of opening a
+	// cell into the next layer
+	private final double joinProbability;
+	private final Random random;
+	private final Direction[] directions;
+	
+	private int layer;
+	private int[] exit;
+	// The set of each cell, by the index of its root
+	private final int[] parents;
+	// For each cell, the root (in the previous layer) of the set it was
+	// opened from, or -1 if its floor is closed
+	private final int[] carriedSets;
+	// Per root, scratch space for joining carried sets and for the cells
+	// opened into the next layer
+	private final int[] firstCells;
+	private final int[] openCounts;
+	private final int[] memberCounts;
+	
+	public EllerMazeGenerator(int[] sideLengths, double joinProbability, long seed) {
+		if (sideLengths == null) throw new NullPointerException();
+		if (sideLengths.length < 2) throw new IllegalArgumentException();
+		for (int sideLength : sideLengths) {
+			if (sideLength < 1) throw new IllegalArgumentException();
+		}
+		this.sideLengths = sideLengths.clone();
+		this.dimensionCount = sideLengths.length;
+		this.layerDimension = dimensionCount - 1;
+		this.layerSideLengths = Arrays.copyOf(sideLengths, layerDimension);
+		this.layerStrides = new int[layerDimension];
+		long layerCellCount = 1;
+		for (int d=0; d<layerDimension; d++) {
+			layerStrides[d] = (int) layerCellCount;
+			layerCellCount *= layerSideLengths[d];
+			if (layerCellCount > Integer.MAX_VALUE) throw new IllegalArgumentException();
+		}
+		this.layerCellCount = (int) layerCellCount;
+		this.joinProbability = joinProbability;
+		this.random = new Random(seed);
+		this.directions = Direction.getDirections(dimensionCount).toArray(new Direction[0]);
+		
+		this.parents = new int[this.layerCellCount];
+		this.carriedSets = new int[this.layerCellCount];
+		Arrays.fill(carriedSets, -1);
+		this.firstCells = new int[this.layerCellCount];
+		this.openCounts = new int[this.layerCellCount];
+		this.memberCounts = new int[this.layerCellCount];
+	}
+	
+	public int[] getSideLengths() {
+		return sideLengths.clone();
+	}
+	// Both inside the maze, like GrowingTreeMazeGenerator's
+	public int[] getEntrance() {
+		return new int[dimensionCount];
+	}
+	// null until the last layer has been generated
+	public int[] getExit() {
+		return exit == null ? null : exit.clone();
+	}
+	// Index (along the last dimension) of the next layer
+	public int getLayer() {
+		return layer;
+	}
+	
+	@Override public boolean hasNext() {
+		return layer < sideLengths[layerDimension];
+	}
+	@Override public MultiDimensionalArray<CellWalls> next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		boolean isLastLayer = layer == sideLengths[layerDimension] - 1;
+		MultiDimensionalArray<CellWalls> walls = new MultiDimensionalArray<>(layerSideLengths);
+		walls.fill(() -> new CellWalls(dimensionCount, true));
+		
+		// Cells opened from the previous layer stay in the same set
+		Arrays.fill(firstCells, -1);
+		for (int cell=0; cell<layerCellCount; cell++) {
+			parents[cell] = cell;
+			int carriedSet = carriedSets[cell];
+			if (carriedSet != -1) {
+				walls.get(cell).setWall(directions[layerDimension * 2], false);
+				if (firstCells[carriedSet] == -1) {
+					firstCells[carriedSet] = cell;
+				}
+				else {
+					parents[cell] = firstCells[carriedSet];
+				}
+			}
+		}
+		if (layer == 0) {
+			walls.get(0).setWall(directions[layerDimension * 2], false);
+		}
+		
+		// Join neighbors within the layer
+		CellSpliterator cells = CellSpliterator.interior(layerSideLengths, layerStrides, 0);
+		int[] coordinates = cells.getCoordinates();
+		cells.forEachRemaining((int cell) -> {
+			for (int d=0; d<layerDimension; d++) {
+				if (coordinates[d] == layerSideLengths[d] - 1) continue;
+				int neighbor = cell + layerStrides[d];
+				int root = find(cell), neighborRoot = find(neighbor);
+				if (root != neighborRoot && (isLastLayer || random.nextDouble() < joinProbability)) {
+					parents[root] = neighborRoot;
+					walls.get(cell).setWall(directions[d * 2 + 1], false);
+					walls.get(neighbor).setWall(directions[d * 2], false);
+				}
+			}
+		});
+		
+		if (isLastLayer) {
+			int exitCell = random.nextInt(layerCellCount);
+			walls.get(exitCell).setWall(directions[layerDimension * 2 + 1], false);
+			exit = Arrays.copyOf(walls.getIndices(exitCell), dimensionCount);
+			exit[layerDimension] = layer;
+		}
+		else {
+			openNextLayer(walls);
+		}
+		layer += 1;
+		return walls;
+	}
+	// Opens cells into the next layer at random, and then one random cell
+	// of each set that got none
+	private void openNextLayer(MultiDimensionalArray<CellWalls> walls) {
+		Arrays.fill(openCounts, 0);
+		Arrays.fill(memberCounts, 0);
+		for (int cell=0; cell<layerCellCount; cell++) {
+			int root = find(cell);
+			memberCounts[root] += 1;
+			if (random.nextDouble() < joinProbability) {
+				carriedSets[cell] = root;
+				openCounts[root] += 1;
+			}
+			else {
+				carriedSets[cell] = -1;
+			}
+		}
+		// For sets with no opening, memberCounts becomes the number of
+		// members still to pass before the chosen one
+		for (int root=0; root<layerCellCount; root++) {
+			if (memberCounts[root] != 0 && openCounts[root] == 0) {
+				memberCounts[root] = random.nextInt(memberCounts[root]);
+			}
+			else {
+				memberCounts[root] = -1;
+			}
+		}
+		for (int cell=0; cell<layerCellCount; cell++) {
+			int root = find(cell);
+			if (memberCounts[root] == 0) {
+				carriedSets[cell] = root;
+			}
+			if (memberCounts[root] >= 0) {
+				memberCounts[root] -= 1;
+			}
+		}
+		for (int cell=0; cell<layerCellCount; cell++) {
+			if (carriedSets[cell] != -1) {
+				walls.get(cell).setWall(directions[layerDimension * 2 + 1], false);
+			}
+		}
+	}
+	private int find(int cell) {
+		while (parents[cell] != cell) {
+			parents[cell] = parents[parents[cell]];
+			cell = parents[cell];
+		}
+		return cell;
+	}
+	
+	// The remaining layers, in order
+	public Stream<MultiDimensionalArray<CellWalls>> stream() {
+		long remaining = sideLengths[layerDimension] - layer;
+		return StreamSupport.stream(Spliterators.spliterator(this, remaining, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+	
+}
@@ -0,0 +1,245 @@
+package mazes.gen;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import mazes.util.ChunkedIntArray;
+import mazes.util.ChunkedLongArray;
+import mazes.util.IntStorage;
+import mazes.util.LongStorage;
+
+// The list of cells that the growing tree algorithm may still branch from.
+// Positions run from 0 to size()-1; getNewestPosition() is the position of
+// the cell that was added most recently and has not yet been removed.
+//
+// In order-preserving mode, cells keep the order in which they were added,
+// which is exactly what the old ArrayList did, so a given seed produces the
+// same maze as before. Positions are found with a Fenwick tree over the
+// order of insertion, so every operation is O(log n) instead of the O(n)
+// ArrayList.remove.
+//
+// Otherwise, removal swaps the last cell into the gap, which is O(1) but
+// reorders the cells (and so changes which cell a given random number
+// picks). The newest cell is tracked separately with a stack, so the
+// selection rules are the same in both modes. Cells that have been removed
+// are cleared out of the stack whenever it fills up, so it stays within a
+// small multiple of the frontier's size. All of this mode's state is kept in
+// long-indexed storage, which may be mapped from a file (see MazeFile).
+//
+// Cells are longs, like wall grid indices. The order-preserving mode is
+// limited to grids of fewer than 2^31 indices; beyond that, only the number
+// of cells in the frontier at once is limited.
+public final class Frontier implements Serializable {
+	
+	public static final long serialVersionUID = 4403616930815628105L;
+	
+	private final boolean preserveOrder;
+	private int size;
+	
+	// Order-preserving mode: every cell ever added, in order, plus a Fenwick
+	// tree counting the cells still present. A removed slot holds -2 minus
+	// the index of some earlier slot, so that runs of removed slots can be
+	// skipped quickly when looking for the newest cell.
+	private long[] slotCells;
+	private int slotCount;
+	private int[] tree;
+	private int newestSlot = -1;
+	
+	// Swapping mode: the cells present, their positions plus one (zero when
+	// absent), and a stack of cells in order of insertion. Storage given to
+	// the constructor never grows; storage of its own is replaced with a
+	// larger copy when full.
+	private LongStorage presentCells;
+	private IntStorage cellPositions;
+	private LongStorage stackCells;
+	private long stackSize;
+	private boolean isFixedCapacity;
+	
+	// Cells must lie in [0, indexCount) and may not be added again until
+	// they have been removed.
+	public Frontier(long indexCount, boolean preserveOrder) {
+		if (indexCount < 0) throw new IllegalArgumentException();
+		this.preserveOrder = preserveOrder;
+		if (preserveOrder) {
+			if (indexCount >= Integer.MAX_VALUE - 8) throw new IllegalArgumentException();
+			this.slotCells = new long[16];
+			this.tree = new int[(int) indexCount + 1];
+		}
+		else {
+			this.presentCells = new ChunkedLongArray(16);
+			this.cellPositions = new ChunkedIntArray(indexCount);
+			this.stackCells = new ChunkedLongArray(16);
+		}
+	}
+	// In swapping mode, keeping all of the state in the given storage, each
+	// of which must have room for every cell (the positions must hold zeros)
+	public Frontier(IntStorage cellPositions, LongStorage presentCells, LongStorage stackCells) {
+		if (presentCells.getLength() < cellPositions.getLength() || stackCells.getLength() < cellPositions.getLength()) throw new IllegalArgumentException();
+		this.preserveOrder = false;
+		this.presentCells = presentCells;
+		this.cellPositions = cellPositions;
+		this.stackCells = stackCells;
+		this.isFixedCapacity = true;
+	}
+	
+	public boolean preservesOrder() {
+		return preserveOrder;
+	}
+	public int size() {
+		return size;
+	}
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void add(long cell) {
+		if (preserveOrder) {
+			if (slotCount == slotCells.length) {
+				slotCells = Arrays.copyOf(slotCells, slotCount * 2);
+			}
+			if (slotCount + 1 == tree.length) {
+				// Only when cells are added again; rebuild a larger tree
+				tree = new int[tree.length * 2];
+				for (int slot=0; slot<slotCount; slot++) {
+					if (slotCells[slot] >= 0) {
+						for (int i=slot+1; i<tree.length; i+=i&-i) {
+							tree[i] += 1;
+						}
+					}
+				}
+			}
+			slotCells[slotCount] = cell;
+			for (int i=slotCount+1; i<tree.length; i+=i&-i) {
+				tree[i] += 1;
+			}
+			newestSlot = slotCount;
+			slotCount += 1;
+		}
+		else {
+			if (cellPositions.get(cell) != 0) throw new IllegalArgumentException();
+			if (size == Integer.MAX_VALUE - 1) throw new IllegalStateException();
+			if (size == presentCells.getLength()) {
+				presentCells = copyOf(presentCells, size, size * 2L);
+			}
+			if (stackSize == stackCells.getLength()) {
+				compactStack();
+			}
+			presentCells.set(size, cell);
+			cellPositions.set(cell, size + 1);
+			stackCells.set(stackSize++, cell);
+		}
+		size += 1;
+	}
+	public long get(int position) {
+		if (position < 0 || position >= size) throw new IndexOutOfBoundsException();
+		if (preserveOrder) {
+			return slotCells[findSlot(position)];
+		}
+		else {
+			return presentCells.get(position);
+		}
+	}
+	public int getNewestPosition() {
+		if (size == 0) throw new IndexOutOfBoundsException();
+		if (preserveOrder) {
+			return size - 1;
+		}
+		else {
+			while (cellPositions.get(stackCells.get(stackSize - 1)) == 0) {
+				stackSize -= 1;
+			}
+			return cellPositions.get(stackCells.get(stackSize - 1)) - 1;
+		}
+	}
+	public void remove(int position) {
+		if (position < 0 || position >= size) throw new IndexOutOfBoundsException();
+		if (preserveOrder) {
+			int slot = findSlot(position);
+			slotCells[slot] = -2 - (slot - 1);
+			for (int i=slot+1; i<tree.length; i+=i&-i) {
+				tree[i] -= 1;
+			}
+		}
+		else {
+			long cell = presentCells.get(position);
+			long last = presentCells.get(size - 1);
+			presentCells.set(position, last);
+			cellPositions.set(last, position + 1);
+			cellPositions.set(cell, 0);
+		}
+		size -= 1;
+	}
+	
+	// Drops the cells that have been removed from the stack, and all but the
+	// newest entry of cells that were added again, keeping the order of the
+	// rest. Makes room for more if that doesn't free at least half of the
+	// stack; storage of fixed capacity is only compacted, since the stack is
+	// then no larger than the frontier. Positions of the cells kept are
+	// negated while the stack is scanned, from the top down, to mark them.
+	private void compactStack() {
+		long write = stackSize;
+		for (long i=stackSize-1; i>=0; i--) {
+			long cell = stackCells.get(i);
+			int position = cellPositions.get(cell);
+			if (position > 0) {
+				cellPositions.set(cell, -position);
+				stackCells.set(--write, cell);
+			}
+		}
+		long kept = stackSize - write;
+		for (long i=0; i<kept; i++) {
+			long cell = stackCells.get(write + i);
+			stackCells.set(i, cell);
+			cellPositions.set(cell, -cellPositions.get(cell));
+		}
+		stackSize = kept;
+		if (!isFixedCapacity && stackSize * 2 > stackCells.getLength()) {
+			stackCells = copyOf(stackCells, stackSize, stackCells.getLength() * 2);
+		}
+	}
+	private static LongStorage copyOf(LongStorage cells, long count, long length) {
+		LongStorage copy = new ChunkedLongArray(length);
+		for (long i=0; i<count; i++) {
+			copy.set(i, cells.get(i));
+		}
+		return copy;
+	}
+	
+	// Finds the slot of the cell at the given position.
+	private int findSlot(int position) {
+		if (position == size - 1) {
+			// The newest cell is picked most of the time at high randomness
+			int slot = newestSlot;
+			while (slotCells[slot] < 0) {
+				slot = (int) (-2 - slotCells[slot]);
+			}
+			// Point every removed slot on the way straight at the live one
+			while (slotCells[newestSlot] < 0) {
+				int next = (int) (-2 - slotCells[newestSlot]);
+				slotCells[newestSlot] = -2 - slot;
+				newestSlot = next;
+			}
+			return slot;
+		}
+		// Descend the Fenwick tree to the (position+1)th occupied slot
+		int slot = 0;
+		int remaining = position + 1;
+		for (int step=Integer.highestOneBit(tree.length - 1); step>0; step>>=1) {
+			int next = slot + step;
+			if (next < tree.length && tree[next] < remaining) {
+				slot = next;
+				remaining -= tree[next];
+			}
+		}
+		return slot;
+	}
+	
+	public long[] toArray() {
+		long[] array = new long[size];
+		for (int position=0; position<size; position++) {
+			array[position] = preserveOrder ? slotCells[findSlot(position)] : presentCells.get(position);
+		}
+		return array;
+	}
+	
+}
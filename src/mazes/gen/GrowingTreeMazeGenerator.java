@@ -1,40 +1,126 @@
 package mazes.gen;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
+import mazes.util.BitMultiDimensionalArray;
+import mazes.util.BitStorage;
+import mazes.util.ChunkedBitArray;
+import mazes.util.ChunkedIntArray;
 import mazes.util.Direction;
+import mazes.util.IntStorage;
+import mazes.util.LongCellSpliterator;
 import mazes.util.MultiDimensionalArray;
 import mazes.util.VectorUtil;
 import util.MathUtil;
 
 public final class GrowingTreeMazeGenerator implements Serializable {
 	
-	@SuppressWarnings("serial")
+	// Seed strings are 26 hex digits: the seed, the randomness and the size.
+	// Mazes from any algorithm other than the original one have two more
+	// digits, for the algorithm, so older seed strings keep their meaning.
+	// Mazes that aren't cubes, or whose sides don't fit in a byte, have a
+	// size of 00, then the algorithm and then each side length in 8 digits
+	// (52 digits in all). The algorithm digits also record whether the
+	// entrance and exit were placed by the maze's border diameter.
 	public static final class Seed implements Serializable {
 		
+		// The value computed for the class before the algorithm was added
+		public static final long serialVersionUID = -39261210915921343L;
+		
+		public static final byte GROWING_TREE = 0;
+		// Growing tree, avoiding walls that can't be supported in a schematic
+		public static final byte BUILDABLE_GROWING_TREE = 1;
+		// Randomized Kruskal's algorithm, built in parallel (see ParallelKruskal)
+		public static final byte KRUSKAL = 2;
+		// Wilson's algorithm, for uniform spanning trees (see WilsonsAlgorithm)
+		public static final byte WILSON = 3;
+		// Set in the stored algorithm when the entrance and exit are placed
+		// by diameter (see generate3DMaze)
+		private static final byte ENDS_BY_DIAMETER = 0x40;
+		
 		private final long seed;
 		private final float randomness;
+		// 0 if the side lengths need the long form
 		private final byte size;
+		// Absent (so 0) in seeds saved before it was added
+		private final byte algorithm;
+		// Absent (so null) in seeds saved before it was added, which are all
+		// cubes of the given size
+		private final int[] sideLengths;
 		
 		private final String seedString;
 		
 		public Seed(long seed, float randomness, byte size) {
+			this(seed, randomness, size, GROWING_TREE);
+		}
+		public Seed(long seed, float randomness, byte size, byte algorithm) {
+			this(seed, randomness, new int[] {size, size, size}, algorithm);
+		}
+		public Seed(long seed, float randomness, int[] sideLengths, byte algorithm) {
+			this(seed, randomness, sideLengths, algorithm, false);
+		}
+		public Seed(long seed, float randomness, int[] sideLengths, byte algorithm, boolean placeEndsByDiameter) {
+			if (algorithm < GROWING_TREE || algorithm > WILSON) throw new IllegalArgumentException();
+			if (sideLengths.length != 3) throw new IllegalArgumentException();
 			this.seed = seed;
 			this.randomness = randomness;
-			this.size = size;
+			this.algorithm = (byte) (placeEndsByDiameter ? algorithm | ENDS_BY_DIAMETER : algorithm);
+			this.sideLengths = sideLengths.clone();
+			boolean isShort = sideLengths[0] == sideLengths[1] && sideLengths[1] == sideLengths[2]
+					&& sideLengths[0] != 0 && sideLengths[0] >= Byte.MIN_VALUE && sideLengths[0] <= Byte.MAX_VALUE;
+			this.size = isShort ? (byte) sideLengths[0] : 0;
 			
-			this.seedString = MathUtil.toHexString(seed) + MathUtil.toHexString(randomness) + MathUtil.toHexString(size);
+			String seedString = MathUtil.toHexString(seed) + MathUtil.toHexString(randomness) + MathUtil.toHexString(size);
+			if (!isShort) {
+				seedString += MathUtil.toHexString(this.algorithm);
+				for (int sideLength : sideLengths) {
+					seedString += MathUtil.toHexString(sideLength);
+				}
+			}
+			else if (this.algorithm != GROWING_TREE) {
+				seedString += MathUtil.toHexString(this.algorithm);
+			}
+			this.seedString = seedString;
 		}
 		public Seed(String seedString) {
 			this.seedString = seedString;
 			
-			if (seedString.length() != 26) throw new NumberFormatException("Seed string must be exactly 28 characters.");
+			if (seedString.length() != 26 && seedString.length() != 28 && seedString.length() != 52) throw new NumberFormatException("Seed string must be exactly 26, 28 or 52 characters.");
 			this.seed = MathUtil.parseLong(seedString.substring(0, 16), 16);
 			this.randomness = Float.intBitsToFloat(MathUtil.parseInt(seedString.substring(16, 24), 16));
 			this.size = MathUtil.parseByte(seedString.substring(24, 26), 16);
+			this.algorithm = seedString.length() >= 28 ? MathUtil.parseByte(seedString.substring(26, 28), 16) : GROWING_TREE;
+			if (getAlgorithm() < GROWING_TREE || getAlgorithm() > WILSON) throw new NumberFormatException("Unknown algorithm " + algorithm + ".");
+			if (seedString.length() == 52) {
+				if (size != 0) throw new NumberFormatException("Seed strings with side lengths must have a size of 00.");
+				this.sideLengths = new int[3];
+				for (int d=0; d<3; d++) {
+					sideLengths[d] = MathUtil.parseInt(seedString.substring(28 + d * 8, 36 + d * 8), 16);
+				}
+			}
+			else {
+				this.sideLengths = new int[] {size, size, size};
+			}
+			if (!isValidShape(sideLengths)) throw new NumberFormatException("Side lengths must be positive, with at most one of 1.");
+		}
+		// In a maze with two sides of 1, every entrance and exit are on one
+		// line, so generate3DMaze would reject every maze as too close. Only
+		// seeds that are parsed or generated from are checked.
+		private static boolean isValidShape(int[] sideLengths) {
+			int unitSideCount = 0;
+			for (int sideLength : sideLengths) {
+				if (sideLength < 1) return false;
+				if (sideLength == 1) unitSideCount += 1;
+			}
+			return unitSideCount < 2;
 		}
 		
 		public long getSeed() {
@@ -43,9 +129,19 @@ public final class GrowingTreeMazeGenerator implements Serializable {
 		public float getRandomness() {
 			return randomness;
 		}
+		// Only for cubes with sides of at most 127; 0 otherwise
 		public byte getSize() {
 			return size;
 		}
+		public int[] getSideLengths() {
+			return sideLengths == null ? new int[] {size, size, size} : sideLengths.clone();
+		}
+		public byte getAlgorithm() {
+			return (byte) (algorithm & ~ENDS_BY_DIAMETER);
+		}
+		public boolean placesEndsByDiameter() {
+			return (algorithm & ENDS_BY_DIAMETER) != 0;
+		}
 		public String getSeedString() {
 			return seedString;
 		}
@@ -54,95 +150,241 @@ public final class GrowingTreeMazeGenerator implements Serializable {
 	public static final long serialVersionUID = -3271334171441858266L;
 	
 	// Generation attributes
-	private final int[] sideLengths;
-	private final int dimensionCount;
+	// (not final so that readObject can fill them in)
+	private int[] sideLengths;
+	private int dimensionCount;
 	// 0 = always choose newest
 	// 1 = always choose random
-	private final double randomness;
+	private double randomness;
 	
 	// Algorithm instance variables
-	private final Seed seed;
-	private final Random random;
-	private final List<int[]> potentialCells;
-	private final MultiDimensionalArray<Boolean> alreadyVisited;
-	private final MultiDimensionalArray<Integer> distanceFromStem;
-	private final MultiDimensionalArray<CellWalls> maze;
+	// Cells are identified by their index in the wall grid.
+	private Seed seed;
+	private Random random;
+	private Frontier frontier;
+	// Indexed like the wall grid, including its padding; the padding around
+	// the maze is marked as visited so that the border needs no separate
+	// checks. Both are null in mazes reopened from a MazeFile, which are
+	// finished.
+	private BitStorage visitedBits;
+	private IntStorage distancesFromEntrance;
+	private WallGrid walls;
+	// The exit will be placed at the border cell farthest from the entrance,
+	// which is tracked as cells are visited
+	private long farthestBorderIndex = -1;
+	private int farthestBorderDistance = -1;
+	// Steer carving away from mazes that can't be built (see WallSupport).
+	// Cells whose every move would leave an unsupported piece are set aside
+	// until nothing else is left, and then carved from one at a time.
+	private boolean avoidUnsupportedPieces;
+	private long[] deferredIndices;
+	private int deferredCellCount;
+	private long forcedIndex = -1;
+	// Build the whole maze in one step instead of growing it one cell at a
+	// time: with ParallelKruskal, with WilsonsAlgorithm, or in blocks of these
+	// side lengths (see PartitionedGrowingTree) if they aren't null
+	private boolean useParallelKruskal;
+	private boolean useWilsonsAlgorithm;
+	private int[] blockSideLengths;
 	
 	private int[] entrance;
 	private int[] exit;
 	
+	// Lookup tables for the shape of the maze, in Direction.getIndex() order
+	private transient long[] neighborOffsets;
+	private transient int[] branchDirections;
+	
+	// CellWalls view of the wall grid, rebuilt when the grid changes
+	private transient MultiDimensionalArray<CellWalls> maze;
+	private transient int mazeModificationCount;
+	// Likewise for the tree index
+	private transient MazeTreeIndex treeIndex;
+	private transient int treeIndexModificationCount;
+	
 	public GrowingTreeMazeGenerator(int[] sideLengths, float randomness, int[] entrance, long seed) {
+		this(sideLengths, randomness, entrance, seed, true);
+	}
+	// With preserveFrontierOrder, a seed produces the same maze as it always
+	// has. Without it, generation is faster on large mazes, but the maze for
+	// a given seed is different (see Frontier). These record no Seed: only
+	// generate3DMaze records one, as only it can reproduce the maze from it.
+	public GrowingTreeMazeGenerator(int[] sideLengths, float randomness, int[] entrance, long seed, boolean preserveFrontierOrder) {
+		this(sideLengths, randomness, entrance, seed, preserveFrontierOrder, null);
+	}
+	// With a file, the per-cell state is kept in it (see MazeFile), and the
+	// frontier doesn't preserve its order.
+	private GrowingTreeMazeGenerator(int[] sideLengths, float randomness, int[] entrance, long seed, boolean preserveFrontierOrder, MazeFile file) {
 		if (sideLengths == null || sideLengths.length < 2) throw new IllegalArgumentException();
 		this.sideLengths = sideLengths;
 		this.dimensionCount = sideLengths.length;
 		this.randomness = randomness;
-		if (sideLengths.length == 3 && sideLengths[0] == sideLengths[1] && sideLengths[1] == sideLengths[2]) {
-			this.seed = new Seed(seed, randomness, (byte)sideLengths[0]);
+		this.random = new Random(seed);
+		
+		if (file == null) {
+			this.walls = new WallGrid(sideLengths, true);
+			this.frontier = new Frontier(walls.getIndexCount(), preserveFrontierOrder);
+			this.visitedBits = new ChunkedBitArray(walls.getIndexCount());
+			this.distancesFromEntrance = new ChunkedIntArray(walls.getIndexCount());
 		}
 		else {
-			this.seed = null;
+			this.walls = new WallGrid(sideLengths, file.getWallBits());
+			this.frontier = new Frontier(file.getFrontierPositions(), file.getFrontierCells(), file.getFrontierStack());
+			this.visitedBits = file.getVisitedBits();
+			this.distancesFromEntrance = file.getDistances();
 		}
-		this.random = new Random(seed);
-		
-		this.potentialCells = new ArrayList<int[]>();
-		this.alreadyVisited = new MultiDimensionalArray<Boolean>(sideLengths);
-		alreadyVisited.fill(false); // otherwise the array will be filled with null
-		this.distanceFromStem = new MultiDimensionalArray<Integer>(sideLengths);
-		this.maze = new MultiDimensionalArray<CellWalls>(sideLengths);
-		maze.fill(() -> new CellWalls(dimensionCount, true));
+		markPaddingVisited();
+		initializeLookupTables();
 		
 		// Initialize arrays with first cell
-		if (!maze.isInteriorOrBorder(entrance)) {
+		if (!MultiDimensionalArray.isInteriorOrBorder(entrance, sideLengths)) {
 			throw new IndexOutOfBoundsException();
 		}
 		else {
 			// if (maze.isBorder(entrance)) {
-			if (!maze.isInterior(entrance)) {
-				Direction entranceDirection = maze.getDirectionIntoGrid(entrance);
+			if (!MultiDimensionalArray.isInterior(entrance, sideLengths)) {
+				Direction entranceDirection = MultiDimensionalArray.getDirectionIntoGrid(entrance, sideLengths);
 				this.entrance = entranceDirection.getIncrement(entrance);
 				// entrance is the original location (outside the maze)
 				// this.entrance is the nearest location inside the maze
-				// There is only one copy of each edge wall, so only one removal is needed
-				maze.get(this.entrance).setWall(entranceDirection.getOpposite(), false);
+				walls.setWall(this.entrance, entranceDirection.getOpposite(), false);
 			}
 			else {
 				// both entrance and this.entrance are inside the maze
 				this.entrance = entrance;
 			}
-			potentialCells.add(this.entrance);
-			alreadyVisited.set(this.entrance, true);
-			distanceFromStem.set(this.entrance, 0);
+			long entranceIndex = walls.getIndex(this.entrance);
+			frontier.add(entranceIndex);
+			setVisited(entranceIndex);
+			considerExit(entranceIndex);
+		}
+	}
+	// Reopens a finished maze from a MazeFile, mapping its walls in
+	private GrowingTreeMazeGenerator(MazeFile file) {
+		this.sideLengths = file.getSideLengths();
+		this.dimensionCount = sideLengths.length;
+		this.randomness = file.getRandomness();
+		this.seed = file.getSeedString() == null ? null : new Seed(file.getSeedString());
+		this.walls = new WallGrid(sideLengths, file.getWallBits());
+		this.frontier = new Frontier(0, false);
+		this.entrance = file.getEntrance();
+		this.exit = file.getExit();
+		initializeLookupTables();
+	}
+	
+	// Generates a maze into a MazeFile at the given path instead of the heap,
+	// for mazes larger than memory. The finished file is the saved maze (see
+	// open()); the maze returned keeps using the file's mapped storage. The
+	// file records no seed: its frontier doesn't preserve its order and the
+	// entrance is the caller's, so generate3DMaze couldn't reproduce it.
+	public static GrowingTreeMazeGenerator generateToFile(Path path, int[] sideLengths, float randomness, int[] entrance, long seed) throws IOException {
+		try (MazeFile file = MazeFile.create(path, sideLengths)) {
+			GrowingTreeMazeGenerator gen = new GrowingTreeMazeGenerator(sideLengths, randomness, entrance, seed, false, file);
+			gen.generate();
+			file.finish(gen.entrance, gen.exit, randomness, null);
+			return gen;
+		}
+	}
+	// Generates one block of a larger maze (see PartitionedGrowingTree). The
+	// block has no Seed, as it isn't a maze of its own and may have any shape.
+	static GrowingTreeMazeGenerator generateBlock(int[] sideLengths, float randomness, int[] start, long seed) {
+		GrowingTreeMazeGenerator gen = new GrowingTreeMazeGenerator(sideLengths, randomness, start, seed, false, null);
+		gen.generate();
+		return gen;
+	}
+	// Only the header is read; the walls are paged in as they are used. They
+	// are mapped read-only, so the maze can't be changed.
+	public static GrowingTreeMazeGenerator open(Path path) throws IOException {
+		try (MazeFile file = MazeFile.open(path)) {
+			return new GrowingTreeMazeGenerator(file);
 		}
 	}
 	
+	// Only for 3D mazes, and only before generation starts
+	public void avoidUnsupportedPieces() {
+		if (dimensionCount != 3) throw new IllegalStateException();
+		avoidUnsupportedPieces = true;
+		deferredIndices = new long[16];
+	}
+	// Only before generation starts, and only for mazes with at most
+	// Integer.MAX_VALUE wall grid indices
+	public void useParallelKruskal() {
+		if (walls.getIndexCount() > Integer.MAX_VALUE) throw new IllegalStateException();
+		useParallelKruskal = true;
+	}
+	// Only before generation starts
+	public void useWilsonsAlgorithm() {
+		useWilsonsAlgorithm = true;
+	}
+	// Only before generation starts
+	public void useParallelBlocks(int[] blockSideLengths) {
+		if (blockSideLengths.length != dimensionCount) throw new IllegalArgumentException();
+		this.blockSideLengths = blockSideLengths.clone();
+	}
+	private void initializeLookupTables() {
+		neighborOffsets = new long[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			neighborOffsets[new Direction(d, false).getIndex()] = -walls.getStride(d);
+			neighborOffsets[new Direction(d, true).getIndex()] = walls.getStride(d);
+		}
+		branchDirections = new int[dimensionCount * 2];
+	}
+	
 	public static int[] getEntrance(byte mazeSize, Random random) {
+		return getEntrance(new int[] {mazeSize, mazeSize, mazeSize}, random);
+	}
+	public static int[] getEntrance(int[] sideLengths, Random random) {
 		int side = random.nextInt(3); // {0, 1, 2} x {false, true} = 6 possibilities, one for each side
 		boolean reverseSide = random.nextBoolean();
 		int[] entrance = new int[3];
 		for (int i=0; i<3; i++) {
 			if (i == side) {
-				entrance[i] = reverseSide ? mazeSize : -1;
+				entrance[i] = reverseSide ? sideLengths[i] : -1;
 			}
 			else {
-				entrance[i] = random.nextInt(mazeSize);
+				entrance[i] = random.nextInt(sideLengths[i]);
 			}
 		}
 		return entrance;
 	}
 	
 	public static GrowingTreeMazeGenerator generate3DMaze(Seed seed) {
+		return generate3DMaze(seed, true);
+	}
+	public static GrowingTreeMazeGenerator generate3DMaze(Seed seed, boolean preserveFrontierOrder) {
+		return generate3DMaze(seed, preserveFrontierOrder, seed.placesEndsByDiameter());
+	}
+	// With placeEndsByDiameter, the first maze generated is kept and its
+	// entrance and exit are then moved to the border cells farthest apart
+	// (see placeEndsByDiameter()), instead of generating mazes until the
+	// exit isn't too close to the entrance. The seed recorded in the maze
+	// says which was done, so it reproduces the maze either way. Seeds don't
+	// record the frontier's order, so mazes grown without preserving it
+	// record no seed.
+	public static GrowingTreeMazeGenerator generate3DMaze(Seed seed, boolean preserveFrontierOrder, boolean placeEndsByDiameter) {
+		if (!Seed.isValidShape(seed.getSideLengths())) throw new IllegalArgumentException();
 		Random random = new Random(seed.getSeed());
 		
-		byte mazeSize = seed.getSize();
+		int[] sideLengths = seed.getSideLengths();
 		GrowingTreeMazeGenerator gen;
 		do {
-			int[] entrance = getEntrance(mazeSize, random);
-			gen = new GrowingTreeMazeGenerator(new int[] {mazeSize, mazeSize, mazeSize}, seed.getRandomness(), entrance, random.nextLong());
-			while (!gen.isFinished()) {
-				gen.performIteration();
+			int[] entrance = getEntrance(sideLengths, random);
+			gen = new GrowingTreeMazeGenerator(sideLengths, seed.getRandomness(), entrance, random.nextLong(), preserveFrontierOrder);
+			gen.useAlgorithm(seed.getAlgorithm());
+			gen.generate();
+			if (placeEndsByDiameter) {
+				gen.placeEndsByDiameter();
 			}
 		}
-		while (gen.entranceExitAdjacent());
+		while (!placeEndsByDiameter && gen.entranceExitAdjacent());
+		if (!preserveFrontierOrder) {
+			return gen;
+		}
+		// Record the seed that reproduces the whole maze (including the
+		// choice of entrance), rather than the one passed to the constructor
+		if (seed.placesEndsByDiameter() != placeEndsByDiameter) {
+			seed = new Seed(seed.getSeed(), seed.getRandomness(), seed.getSideLengths(), seed.getAlgorithm(), placeEndsByDiameter);
+		}
+		gen.seed = seed;
 		return gen;
 	}
 	public static GrowingTreeMazeGenerator generate2DMaze(int mazeSize, float randomness, long seed) {
@@ -151,15 +393,44 @@ public final class GrowingTreeMazeGenerator implements Serializable {
 	public static GrowingTreeMazeGenerator generate4DMaze(int mazeSize, float randomness, long seed) {
 		return new GrowingTreeMazeGenerator(new int[] {mazeSize, mazeSize, mazeSize, mazeSize}, randomness, new int[] {-1, 0, 0, 0}, seed);
 	}
+	// With one of the Seed algorithms, before generation starts (the
+	// randomness only matters to the growing tree)
+	public static GrowingTreeMazeGenerator generate2DMaze(int mazeSize, float randomness, long seed, byte algorithm) {
+		GrowingTreeMazeGenerator gen = generate2DMaze(mazeSize, randomness, seed);
+		gen.useAlgorithm(algorithm);
+		return gen;
+	}
+	public static GrowingTreeMazeGenerator generate4DMaze(int mazeSize, float randomness, long seed, byte algorithm) {
+		GrowingTreeMazeGenerator gen = generate4DMaze(mazeSize, randomness, seed);
+		gen.useAlgorithm(algorithm);
+		return gen;
+	}
+	private void useAlgorithm(byte algorithm) {
+		switch (algorithm) {
+		case Seed.GROWING_TREE:
+			break;
+		case Seed.BUILDABLE_GROWING_TREE:
+			avoidUnsupportedPieces();
+			break;
+		case Seed.KRUSKAL:
+			useParallelKruskal();
+			break;
+		case Seed.WILSON:
+			useWilsonsAlgorithm();
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
 	private boolean entranceExitAdjacent() {
 		int[] adjEntrance = entrance;
 		try {
-			adjEntrance = VectorUtil.sumVectors(adjEntrance, maze.getDirectionIntoGrid(adjEntrance).getOffsets(3));
+			adjEntrance = VectorUtil.sumVectors(adjEntrance, MultiDimensionalArray.getDirectionIntoGrid(adjEntrance, sideLengths).getOffsets(3));
 		}
 		catch (IllegalArgumentException e) {}
 		int[] adjExit = exit;
 		try {
-			adjExit = VectorUtil.sumVectors(adjExit, maze.getDirectionIntoGrid(adjExit).getOffsets(3));
+			adjExit = VectorUtil.sumVectors(adjExit, MultiDimensionalArray.getDirectionIntoGrid(adjExit, sideLengths).getOffsets(3));
 		}
 		catch (IllegalArgumentException e) {}
 		int[] difference = VectorUtil.subtractVectors(adjEntrance, adjExit);
@@ -168,73 +439,259 @@ public final class GrowingTreeMazeGenerator implements Serializable {
 	}
 	public void performIteration() {
 		if (isFinished()) return;
+		carvePassage();
+		if (isFinished()) {
+			placeExit();
+		}
+	}
+	// Runs the algorithm to completion
+	public void generate() {
+		if (isFinished()) return;
+		while (!isFinished()) {
+			carvePassage();
+		}
+		placeExit();
+	}
+	private void carvePassage() {
+		if (useParallelKruskal || useWilsonsAlgorithm || blockSideLengths != null) {
+			buildSpanningTree();
+			return;
+		}
+		if (frontier.isEmpty()) {
+			resumeDeferredCell();
+			return;
+		}
 		int baseCellIndex;
 		if (random.nextDouble() < randomness) {
 			// Choose newest cell
-			baseCellIndex = potentialCells.size()-1;
+			baseCellIndex = frontier.getNewestPosition();
 		}
 		else {
 			// Choose random cell
-			baseCellIndex = random.nextInt(potentialCells.size());
+			baseCellIndex = random.nextInt(frontier.size());
 		}
-		int[] baseCell = potentialCells.get(baseCellIndex);
+		long baseCell = frontier.get(baseCellIndex);
 		// Pick a direction
-		List<Direction> possibleBranchDirections = new ArrayList<>();
-		List<int[]> possibleBranchCells = new ArrayList<>();
-		for (Direction potentialDirection : Direction.getDirections(dimensionCount)) {
-			int[] targetCell = potentialDirection.getIncrement(baseCell);
-			if (maze.isInterior(targetCell) && !alreadyVisited.get(targetCell)) {
-				possibleBranchDirections.add(potentialDirection);
-				possibleBranchCells.add(targetCell);
+		int branchDirectionCount = 0;
+		for (int direction=0; direction<neighborOffsets.length; direction++) {
+			if (!isVisited(baseCell + neighborOffsets[direction])) {
+				branchDirections[branchDirectionCount++] = direction;
+			}
+		}
+		if (avoidUnsupportedPieces && branchDirectionCount > 0 && baseCell != forcedIndex) {
+			// Keep only the directions that don't leave a tetris piece without
+			// enough support
+			int safeDirectionCount = 0;
+			for (int i=0; i<branchDirectionCount; i++) {
+				if (!leavesUnsupportedPiece(baseCell, branchDirections[i])) {
+					branchDirections[safeDirectionCount++] = branchDirections[i];
+				}
 			}
+			if (safeDirectionCount == 0) {
+				frontier.remove(baseCellIndex);
+				if (deferredCellCount == deferredIndices.length) {
+					deferredIndices = Arrays.copyOf(deferredIndices, deferredCellCount * 2);
+				}
+				deferredIndices[deferredCellCount++] = baseCell;
+				return;
+			}
+			branchDirectionCount = safeDirectionCount;
 		}
-		if (possibleBranchDirections.size() == 0) {
+		if (branchDirectionCount == 0) {
 			// Turns out this cell is boxed in; no longer consider it
-			potentialCells.remove(baseCellIndex);
+			frontier.remove(baseCellIndex);
 		}
 		else {
-			// Pick a random (valid) direction and destroy the walls in that direction
-			int randomIndex = random.nextInt(possibleBranchDirections.size());
-			Direction branchDirection = possibleBranchDirections.get(randomIndex);
-			int[] branchCell = possibleBranchCells.get(randomIndex);
-			maze.get(baseCell).setWall(branchDirection, false);
-			maze.get(branchCell).setWall(branchDirection.getOpposite(), false);
-			potentialCells.add(branchCell);
-			alreadyVisited.set(branchCell, true);
-			distanceFromStem.set(branchCell, distanceFromStem.get(baseCell) + 1);
+			// Pick a random (valid) direction and destroy the wall in that direction
+			int branchDirection = branchDirections[random.nextInt(branchDirectionCount)];
+			long branchCell = baseCell + neighborOffsets[branchDirection];
+			// Neighboring cells share the wall between them
+			walls.setWall(baseCell, branchDirection >> 1, (branchDirection & 1) != 0, false);
+			frontier.add(branchCell);
+			setVisited(branchCell);
+			distancesFromEntrance.set(branchCell, distancesFromEntrance.get(baseCell) + 1);
+			considerExit(branchCell);
+			forcedIndex = -1;
 		}
-		
-		if (isFinished()) {
-			// Locate the exit (only once; after this, performIteration will
-			// terminate immediately.)
-			List<int[]> borderCells = MultiDimensionalArray.getBorderIndexList(sideLengths);
-			int[] farthestCell = null;
-			int farthestDistance = 0;
-			for (int[] borderCell : borderCells) {
-				if (distanceFromStem.get(borderCell) >= farthestDistance) {
-					farthestCell = borderCell;
-					farthestDistance = distanceFromStem.get(borderCell);
+	}
+	// Carves the whole maze at once (the frontier only holds the entrance),
+	// then walks it from the entrance to visit every cell and find the exit
+	// as carving would have
+	private void buildSpanningTree() {
+		if (blockSideLengths != null) {
+			PartitionedGrowingTree.carve(walls, (float) randomness, blockSideLengths, random.nextLong());
+		}
+		else if (useWilsonsAlgorithm) {
+			WilsonsAlgorithm.carve(walls, frontier.get(0), random);
+		}
+		else {
+			ParallelKruskal.carve(walls, random.nextLong());
+		}
+		long[] stack = {frontier.get(0)};
+		int stackSize = 1;
+		frontier.remove(0);
+		while (stackSize > 0) {
+			long cell = stack[--stackSize];
+			for (int direction=0; direction<neighborOffsets.length; direction++) {
+				long neighbor = cell + neighborOffsets[direction];
+				if (!isVisited(neighbor) && !walls.getWall(cell, direction >> 1, (direction & 1) != 0)) {
+					setVisited(neighbor);
+					distancesFromEntrance.set(neighbor, distancesFromEntrance.get(cell) + 1);
+					considerExit(neighbor);
+					if (stackSize == stack.length) {
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					}
+					stack[stackSize++] = neighbor;
+				}
+			}
+		}
+	}
+	// Called when the frontier is empty: puts the most recently deferred cell
+	// that can still branch back in the frontier, allowing it any move.
+	private void resumeDeferredCell() {
+		while (deferredCellCount > 0) {
+			long cell = deferredIndices[--deferredCellCount];
+			for (long offset : neighborOffsets) {
+				if (!isVisited(cell + offset)) {
+					frontier.add(cell);
+					forcedIndex = cell;
+					return;
+				}
+			}
+		}
+	}
+	// Removes the wall temporarily and checks the pieces it could change:
+	// those of the walls above, below and beside it in its plane (the run
+	// above it gets a new bottom, which may join the runs beside that), or,
+	// for a floor, those of the walls around the cells above and below it.
+	// A wall between two cells also must not leave a central column that
+	// can't be filled at either end of it, and a floor must not leave part of
+	// its layer cut off from the rest.
+	private boolean leavesUnsupportedPiece(long cell, int direction) {
+		int dimension = direction >> 1;
+		long negativeCell = (direction & 1) != 0 ? cell : cell + neighborOffsets[direction];
+		long zStride = walls.getStride(2);
+		walls.setWall(negativeCell, dimension, true, false);
+		boolean result = false;
+		if (dimension == 2) {
+			for (long layerCell : new long[] {negativeCell, negativeCell + zStride}) {
+				for (int d=0; d<2; d++) {
+					result |= WallSupport.isUnsupported(walls, d, layerCell)
+							|| WallSupport.isUnsupported(walls, d, layerCell - walls.getStride(d));
 				}
 			}
-			if (farthestCell == null) throw new AssertionError();
-			this.exit = farthestCell;
-			// Make a physical exit at this location
-			maze.get(this.exit).setWall(maze.getDirectionOutOfGrid(this.exit), false);
+			// The hole may also cut off part of the layer
+			for (int d=0; d<2; d++) {
+				result |= WallSupport.isIslandedFloor(walls, negativeCell - walls.getStride(d))
+						|| WallSupport.isIslandedFloor(walls, negativeCell + walls.getStride(d));
+			}
+		}
+		else {
+			// The wall also touches the vertical edges at either end of it
+			long parallelStride = walls.getStride(1 - dimension);
+			result = WallSupport.isUnfilledEdge(walls, negativeCell) || WallSupport.isUnfilledEdge(walls, negativeCell - parallelStride)
+					|| WallSupport.isUnsupported(walls, dimension, negativeCell - zStride)
+					|| WallSupport.isUnsupported(walls, dimension, negativeCell + zStride);
+			for (long neighbor : new long[] {negativeCell - parallelStride, negativeCell + parallelStride}) {
+				result |= WallSupport.isUnsupported(walls, dimension, neighbor)
+						|| WallSupport.isUnsupported(walls, dimension, neighbor + zStride);
+			}
+		}
+		walls.setWall(negativeCell, dimension, true, true);
+		return result;
+	}
+	private void considerExit(long cell) {
+		// Among equally distant border cells, the one with the highest index
+		// wins; this matches the order in which the border used to be scanned
+		int distance = distancesFromEntrance.get(cell);
+		if (distance > farthestBorderDistance || distance == farthestBorderDistance && cell > farthestBorderIndex) {
+			if (walls.isInsideBorder(cell)) {
+				farthestBorderIndex = cell;
+				farthestBorderDistance = distance;
+			}
+		}
+	}
+	private void placeExit() {
+		// Make a physical exit at the farthest border cell (only once; after
+		// this, performIteration will terminate immediately.)
+		if (farthestBorderIndex == -1) throw new AssertionError();
+		this.exit = walls.getCoordinates(farthestBorderIndex);
+		walls.setWall(this.exit, MultiDimensionalArray.getDirectionOutOfGrid(this.exit, sideLengths), false);
+	}
+	// Moves the entrance and exit of a finished maze to the two border cells
+	// farthest apart through it, or the farthest pair found that isn't on one
+	// line (see BorderDiameter)
+	public void placeEndsByDiameter() {
+		if (!isFinished()) throw new IllegalStateException();
+		closeOutsideWalls(entrance);
+		closeOutsideWalls(exit);
+		long[] ends = BorderDiameter.find(walls, walls.getIndex(entrance));
+		this.entrance = walls.getCoordinates(ends[0]);
+		this.exit = walls.getCoordinates(ends[1]);
+		walls.setWall(this.entrance, MultiDimensionalArray.getDirectionOutOfGrid(this.entrance, sideLengths), false);
+		walls.setWall(this.exit, MultiDimensionalArray.getDirectionOutOfGrid(this.exit, sideLengths), false);
+	}
+	private void closeOutsideWalls(int[] cell) {
+		for (int d=0; d<dimensionCount; d++) {
+			if (cell[d] == 0) {
+				walls.setWall(cell, new Direction(d, false), true);
+			}
+			if (cell[d] == sideLengths[d] - 1) {
+				walls.setWall(cell, new Direction(d, true), true);
+			}
 		}
 	}
+	private void markPaddingVisited() {
+		visitedBits.fill(true);
+		walls.getInteriorCells().forEachRemaining((long index) -> visitedBits.set(index, false));
+	}
+	private boolean isVisited(long index) {
+		return visitedBits.get(index);
+	}
+	private void setVisited(long index) {
+		visitedBits.set(index, true);
+	}
 	
 	public boolean isFinished() {
-		return potentialCells.size() == 0;
+		return frontier.isEmpty() && deferredCellCount == 0;
 	}
+	// Snapshots for display; they are rebuilt on every call.
 	public List<int[]> getPotentialCells() {
+		List<int[]> potentialCells = new ArrayList<>(frontier.size());
+		for (long cell : frontier.toArray()) {
+			potentialCells.add(walls.getCoordinates(cell));
+		}
 		return potentialCells;
 	}
-	public MultiDimensionalArray<Boolean> getAlreadyVisited() {
+	public BitMultiDimensionalArray getAlreadyVisited() {
+		BitMultiDimensionalArray alreadyVisited = new BitMultiDimensionalArray(sideLengths);
+		LongCellSpliterator cells = walls.getInteriorCells();
+		int[] cell = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> alreadyVisited.set(cell, visitedBits == null || isVisited(index)));
 		return alreadyVisited;
 	}
+	public WallGrid getWalls() {
+		return walls;
+	}
+	// Snapshot for code written against CellWalls; changes to it are not
+	// written back to the maze.
 	public MultiDimensionalArray<CellWalls> getMaze() {
+		if (maze == null || mazeModificationCount != walls.getModificationCount()) {
+			maze = walls.toCellWallsArray();
+			mazeModificationCount = walls.getModificationCount();
+		}
 		return maze;
 	}
+	// Distances and paths between any two cells of a finished maze, rooted
+	// at the entrance (see MazeTreeIndex)
+	public MazeTreeIndex getTreeIndex() {
+		if (!isFinished()) throw new IllegalStateException();
+		if (treeIndex == null || treeIndexModificationCount != walls.getModificationCount()) {
+			treeIndex = new MazeTreeIndex(walls, entrance);
+			treeIndexModificationCount = walls.getModificationCount();
+		}
+		return treeIndex;
+	}
 	public int[] getEntrance() {
 		return entrance;
 	}
@@ -245,4 +702,80 @@ public final class GrowingTreeMazeGenerator implements Serializable {
 		return seed;
 	}
 	
-}
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		ObjectStreamClass streamClass = fields.getObjectStreamClass();
+		sideLengths = (int[]) fields.get("sideLengths", null);
+		dimensionCount = fields.get("dimensionCount", 0);
+		randomness = fields.get("randomness", 0.0);
+		seed = (Seed) fields.get("seed", null);
+		random = (Random) fields.get("random", null);
+		entrance = (int[]) fields.get("entrance", null);
+		exit = (int[]) fields.get("exit", null);
+		avoidUnsupportedPieces = fields.get("avoidUnsupportedPieces", false);
+		useParallelKruskal = fields.get("useParallelKruskal", false);
+		useWilsonsAlgorithm = fields.get("useWilsonsAlgorithm", false);
+		blockSideLengths = (int[]) fields.get("blockSideLengths", null);
+		deferredCellCount = fields.get("deferredCellCount", 0);
+		if (streamClass.getField("deferredIndices") != null) {
+			deferredIndices = (long[]) fields.get("deferredIndices", null);
+			forcedIndex = fields.get("forcedIndex", -1L);
+		}
+		else {
+			deferredIndices = null;
+			forcedIndex = -1;
+		}
+		if (streamClass.getField("walls") != null) {
+			walls = (WallGrid) fields.get("walls", null);
+		}
+		else {
+			// Mazes saved before the wall grid was introduced store one
+			// CellWalls object per cell instead
+			walls = WallGrid.fromCellWalls((MultiDimensionalArray<CellWalls>) fields.get("maze", null));
+		}
+		if (streamClass.getField("visitedBits") != null) {
+			frontier = (Frontier) fields.get("frontier", null);
+			visitedBits = (BitStorage) fields.get("visitedBits", null);
+			distancesFromEntrance = (IntStorage) fields.get("distancesFromEntrance", null);
+		}
+		else {
+			// Older mazes keep the algorithm state in boxed form
+			List<int[]> potentialCells = (List<int[]>) fields.get("potentialCells", null);
+			MultiDimensionalArray<Boolean> alreadyVisited = (MultiDimensionalArray<Boolean>) fields.get("alreadyVisited", null);
+			MultiDimensionalArray<Integer> distanceFromStem = (MultiDimensionalArray<Integer>) fields.get("distanceFromStem", null);
+			frontier = new Frontier(walls.getIndexCount(), true);
+			for (int[] cell : potentialCells) {
+				frontier.add(walls.getIndex(cell));
+			}
+			visitedBits = new ChunkedBitArray(walls.getIndexCount());
+			distancesFromEntrance = new ChunkedIntArray(walls.getIndexCount());
+			markPaddingVisited();
+			LongCellSpliterator cells = walls.getInteriorCells();
+			int[] cell = cells.getCoordinates();
+			cells.forEachRemaining((long index) -> {
+				if (alreadyVisited.get(cell)) {
+					setVisited(index);
+				}
+				if (distanceFromStem.get(cell) != null) {
+					distancesFromEntrance.set(index, distanceFromStem.get(cell));
+				}
+			});
+		}
+		if (streamClass.getField("farthestBorderIndex") != null) {
+			farthestBorderIndex = fields.get("farthestBorderIndex", -1L);
+			farthestBorderDistance = fields.get("farthestBorderDistance", -1);
+		}
+		else {
+			farthestBorderIndex = -1;
+			farthestBorderDistance = -1;
+			walls.getBorderCells().forEachRemaining((long index) -> {
+				if (isVisited(index)) {
+					considerExit(index);
+				}
+			});
+		}
+		initializeLookupTables();
+	}
+	
+}
\ No newline at end of file
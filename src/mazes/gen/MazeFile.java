@@ -0,0 +1,230 @@
+package mazes.gen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import mazes.util.MappedBitArray;
+import mazes.util.MappedIntArray;
+import mazes.util.MappedLongArray;
+
+// A maze kept in memory-mapped files rather than on the heap, so that it can
+// be larger than memory (see GrowingTreeMazeGenerator.generateToFile).
+//
+// The maze file holds a header and then the wall bits, in WallGrid's layout,
+// as a MappedBitArray. A finished file is the saved maze: reopening it reads
+// the header and maps the walls back in, without deserializing anything.
+// While the maze is generated, the rest of the per-cell state (visited
+// flags, distances from the entrance, and the frontier's positions, cells
+// and stack) is mapped from a scratch file beside it, which is deleted when
+// the maze file is closed. Only the pages that are used take up disk space
+// on file systems with sparse files.
+//
+// The header is little-endian: the magic number, the format version, a
+// finished flag, the dimension count, the side lengths, the entrance and
+// exit (inside the maze, as getEntrance() and getExit() give them), the
+// randomness, and the seed string (empty if there is none; generateToFile
+// records none).
+public final class MazeFile implements Closeable {
+	
+	private static final long magic = 0x50414D5A4D484343L; // "CCHMZMAP", read as little-endian
+	private static final int version = 1;
+	private static final int headerLength = 4096;
+	private static final int maxDimensionCount = 64;
+	private static final int maxSeedStringLength = 64;
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final int[] sideLengths;
+	private final long indexCount;
+	private final MappedBitArray wallBits;
+	
+	// Only while the maze is generated
+	private FileChannel scratchChannel;
+	private MappedBitArray visitedBits;
+	private MappedIntArray distances;
+	private MappedIntArray frontierPositions;
+	private MappedLongArray frontierCells;
+	private MappedLongArray frontierStack;
+	
+	private MazeFile(FileChannel channel, FileChannel.MapMode mode, int[] sideLengths) throws IOException {
+		this.channel = channel;
+		this.header = channel.map(mode, 0, headerLength);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		this.sideLengths = sideLengths.clone();
+		this.indexCount = getIndexCount(sideLengths);
+		this.wallBits = new MappedBitArray(channel, mode, headerLength, indexCount * sideLengths.length);
+	}
+	// Wall grids pad every side by one cell
+	private static long getIndexCount(int[] sideLengths) {
+		long indexCount = 1;
+		for (int sideLength : sideLengths) {
+			if (sideLength < 1) throw new IllegalArgumentException();
+			indexCount = Math.multiplyExact(indexCount, sideLength + 2L);
+		}
+		if (indexCount > Long.MAX_VALUE / sideLengths.length) throw new IllegalArgumentException();
+		return indexCount;
+	}
+	
+	// Creates (or replaces) the maze file, and a scratch file beside it
+	public static MazeFile create(Path path, int[] sideLengths) throws IOException {
+		if (sideLengths.length == 0 || sideLengths.length > maxDimensionCount) throw new IllegalArgumentException();
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MazeFile file;
+		try {
+			file = new MazeFile(channel, FileChannel.MapMode.READ_WRITE, sideLengths);
+			file.createScratch(Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".scratch"));
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		// Every wall starts out present
+		file.wallBits.fill(true);
+		file.header.putLong(0, magic);
+		file.header.putInt(8, version);
+		file.header.putInt(12, 0);
+		file.header.putInt(16, sideLengths.length);
+		for (int d=0; d<sideLengths.length; d++) {
+			file.header.putInt(20 + d * 4, sideLengths[d]);
+		}
+		return file;
+	}
+	private void createScratch(Path scratchPath) throws IOException {
+		scratchChannel = FileChannel.open(scratchPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		long position = 0;
+		visitedBits = new MappedBitArray(scratchChannel, FileChannel.MapMode.READ_WRITE, position, indexCount);
+		position += MappedBitArray.getByteCount(indexCount);
+		distances = new MappedIntArray(scratchChannel, FileChannel.MapMode.READ_WRITE, position, indexCount);
+		position += MappedIntArray.getByteCount(indexCount);
+		frontierPositions = new MappedIntArray(scratchChannel, FileChannel.MapMode.READ_WRITE, position, indexCount);
+		position += MappedIntArray.getByteCount(indexCount);
+		frontierCells = new MappedLongArray(scratchChannel, FileChannel.MapMode.READ_WRITE, position, indexCount);
+		position += MappedLongArray.getByteCount(indexCount);
+		frontierStack = new MappedLongArray(scratchChannel, FileChannel.MapMode.READ_WRITE, position, indexCount);
+	}
+	// Opens a finished maze file, read-only, so files on read-only storage
+	// can be opened too
+	public static MazeFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() < headerLength) throw new IOException("Not a maze file.");
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong(0) != magic) throw new IOException("Not a maze file.");
+			if (header.getInt(8) != version) throw new IOException("Unknown maze file version " + header.getInt(8) + ".");
+			if (header.getInt(12) == 0) throw new IOException("The maze in this file was never finished.");
+			int dimensionCount = header.getInt(16);
+			if (dimensionCount < 1 || dimensionCount > maxDimensionCount) throw new IOException("Corrupt maze file header.");
+			int[] sideLengths = new int[dimensionCount];
+			for (int d=0; d<dimensionCount; d++) {
+				sideLengths[d] = header.getInt(20 + d * 4);
+			}
+			// A read-only mapping can't extend the file, so check its length first
+			if (channel.size() < headerLength + MappedBitArray.getByteCount(getIndexCount(sideLengths) * dimensionCount)) throw new IOException("Truncated maze file.");
+			return new MazeFile(channel, FileChannel.MapMode.READ_ONLY, sideLengths);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	// Records the rest of the maze in the header and marks it finished
+	public void finish(int[] entrance, int[] exit, float randomness, String seedString) {
+		int dimensionCount = sideLengths.length;
+		int position = 20 + dimensionCount * 4;
+		for (int[] cell : new int[][] {entrance, exit}) {
+			for (int d=0; d<dimensionCount; d++) {
+				header.putInt(position, cell[d]);
+				position += 4;
+			}
+		}
+		header.putFloat(position, randomness);
+		position += 4;
+		byte[] seedBytes = seedString == null ? new byte[0] : seedString.getBytes(StandardCharsets.US_ASCII);
+		if (seedBytes.length > maxSeedStringLength) throw new IllegalArgumentException();
+		header.putInt(position, seedBytes.length);
+		position += 4;
+		for (byte b : seedBytes) {
+			header.put(position++, b);
+		}
+		wallBits.force();
+		header.putInt(12, 1);
+		header.force();
+	}
+	
+	public int[] getSideLengths() {
+		return sideLengths.clone();
+	}
+	public MappedBitArray getWallBits() {
+		return wallBits;
+	}
+	// The scratch storage; null for opened files
+	public MappedBitArray getVisitedBits() {
+		return visitedBits;
+	}
+	public MappedIntArray getDistances() {
+		return distances;
+	}
+	public MappedIntArray getFrontierPositions() {
+		return frontierPositions;
+	}
+	public MappedLongArray getFrontierCells() {
+		return frontierCells;
+	}
+	public MappedLongArray getFrontierStack() {
+		return frontierStack;
+	}
+	
+	// Only for finished files
+	public int[] getEntrance() {
+		return readCell(20 + sideLengths.length * 4);
+	}
+	public int[] getExit() {
+		return readCell(20 + sideLengths.length * 8);
+	}
+	private int[] readCell(int position) {
+		int[] cell = new int[sideLengths.length];
+		for (int d=0; d<cell.length; d++) {
+			cell[d] = header.getInt(position + d * 4);
+		}
+		return cell;
+	}
+	public float getRandomness() {
+		return header.getFloat(20 + sideLengths.length * 12);
+	}
+	// null if the maze has no seed
+	public String getSeedString() {
+		int position = 24 + sideLengths.length * 12;
+		int length = header.getInt(position);
+		if (length == 0) return null;
+		byte[] seedBytes = new byte[length];
+		for (int i=0; i<length; i++) {
+			seedBytes[i] = header.get(position + 4 + i);
+		}
+		return new String(seedBytes, StandardCharsets.US_ASCII);
+	}
+	
+	// The mapped storage stays usable after closing; only the scratch file
+	// is deleted (on systems that allow deleting mapped files, its mapping
+	// also stays valid).
+	@Override public void close() throws IOException {
+		try {
+			channel.close();
+		}
+		finally {
+			if (scratchChannel != null) {
+				scratchChannel.close();
+			}
+		}
+	}
+	
+}
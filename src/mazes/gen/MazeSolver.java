@@ -0,0 +1,168 @@
+package mazes.gen;
+
+import java.util.Arrays;
+
+// Shortest paths through the open walls of a WallGrid, by breadth-first
+// search over wall grid indices, either from one end or from both ends at
+// once (which, in a perfect maze, usually looks at far fewer cells). The
+// parent arrays and queues are plain int arrays, allocated once per solver
+// and reused by every search, so the grid must have at most
+// Integer.MAX_VALUE indices. Paths are int arrays of wall grid indices,
+// from the first cell to the last, inclusive; the walls may change between
+// searches.
+public final class MazeSolver {
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	// Differences between the indices of neighbors, in Direction.getIndex()
+	// order
+	private final int[] neighborOffsets;
+	private final Search forward;
+	// Only allocated for searches from both ends
+	private Search backward;
+	
+	public MazeSolver(WallGrid walls) {
+		if (walls.getIndexCount() > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many cells for the solver.");
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.neighborOffsets = new int[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			neighborOffsets[2 * d] = (int) -walls.getStride(d);
+			neighborOffsets[2 * d + 1] = (int) walls.getStride(d);
+		}
+		this.forward = new Search();
+	}
+	
+	// null if the cells aren't connected
+	public int[] findPath(int[] from, int[] to) {
+		return findPath(walls.getIndex(from), walls.getIndex(to));
+	}
+	public int[] findPath(long from, long to) {
+		int source = checkCell(from);
+		int target = checkCell(to);
+		forward.reset(source);
+		while (!forward.isEmpty()) {
+			int found = forward.expandLevel(null, target);
+			if (found != -1) return forward.tracePath(found, new int[forward.getDepth(found) + 1], 0, false);
+		}
+		return null;
+	}
+	public int[] findPathBidirectional(int[] from, int[] to) {
+		return findPathBidirectional(walls.getIndex(from), walls.getIndex(to));
+	}
+	public int[] findPathBidirectional(long from, long to) {
+		int source = checkCell(from);
+		int target = checkCell(to);
+		if (backward == null) {
+			backward = new Search();
+		}
+		forward.reset(source);
+		backward.reset(target);
+		if (source == target) return new int[] {source};
+		while (!forward.isEmpty() && !backward.isEmpty()) {
+			// Expand whichever side has fewer cells waiting
+			boolean isForward = forward.size() <= backward.size();
+			int meeting = isForward ? forward.expandLevel(backward, -1) : backward.expandLevel(forward, -1);
+			if (meeting != -1) {
+				int forwardDepth = forward.getDepth(meeting);
+				int[] path = new int[forwardDepth + backward.getDepth(meeting) + 1];
+				forward.tracePath(meeting, path, 0, false);
+				backward.tracePath(meeting, path, forwardDepth, true);
+				return path;
+			}
+		}
+		return null;
+	}
+	// The Direction.getIndex() of each step of a path
+	public int[] getSteps(int[] path) {
+		int[] steps = new int[Math.max(path.length - 1, 0)];
+		for (int i=0; i<steps.length; i++) {
+			int offset = path[i + 1] - path[i];
+			steps[i] = -1;
+			for (int direction=0; direction<neighborOffsets.length; direction++) {
+				if (neighborOffsets[direction] == offset) {
+					steps[i] = direction;
+				}
+			}
+			if (steps[i] == -1) throw new IllegalArgumentException();
+		}
+		return steps;
+	}
+	
+	private int checkCell(long index) {
+		if (!walls.isInterior(index)) throw new IndexOutOfBoundsException();
+		return (int) index;
+	}
+	
+	// One breadth-first search: the parent of each cell it has reached (its
+	// root is its own parent), -1 for cells it hasn't, and -2 for the
+	// padding, which is never entered. The padding is marked once; after
+	// that, only the cells the last search queued are cleared, so a search
+	// costs time in proportion to the cells it looks at.
+	private final class Search {
+		
+		private final int[] parents = new int[(int) walls.getIndexCount()];
+		private final int[] queue = new int[(int) walls.getCellCount()];
+		private int head;
+		private int tail;
+		
+		private Search() {
+			Arrays.fill(parents, -2);
+			walls.getInteriorCells().forEachRemaining((long index) -> parents[(int) index] = -1);
+		}
+		
+		private void reset(int root) {
+			for (int i=0; i<tail; i++) {
+				parents[queue[i]] = -1;
+			}
+			parents[root] = root;
+			queue[0] = root;
+			head = 0;
+			tail = 1;
+		}
+		private boolean isEmpty() {
+			return head == tail;
+		}
+		private int size() {
+			return tail - head;
+		}
+		// Visits the neighbors of the cells at the current distance, returning
+		// the first cell reached that is the target or was already reached by
+		// the other search, or -1 if there is none
+		private int expandLevel(Search other, int target) {
+			int levelEnd = tail;
+			while (head < levelEnd) {
+				int cell = queue[head++];
+				if (cell == target) return cell;
+				for (int direction=0; direction<neighborOffsets.length; direction++) {
+					int neighbor = cell + neighborOffsets[direction];
+					if (parents[neighbor] != -1 || walls.getWall(cell, direction >> 1, (direction & 1) != 0)) continue;
+					parents[neighbor] = cell;
+					queue[tail++] = neighbor;
+					if (other != null && other.parents[neighbor] >= 0) return neighbor;
+				}
+			}
+			return -1;
+		}
+		private int getDepth(int cell) {
+			int depth = 0;
+			while (parents[cell] != cell) {
+				cell = parents[cell];
+				depth += 1;
+			}
+			return depth;
+		}
+		// Writes the path from the root to the cell into the array at start,
+		// or, reversed, the path from the cell back to the root
+		private int[] tracePath(int cell, int[] path, int start, boolean isReversed) {
+			int depth = getDepth(cell);
+			for (int i=0; i<=depth; i++) {
+				path[isReversed ? start + i : start + depth - i] = cell;
+				cell = parents[cell];
+			}
+			return path;
+		}
+		
+	}
+	
+}
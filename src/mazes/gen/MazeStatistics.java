@@ -0,0 +1,236 @@
+package mazes.gen;
+
+import java.util.Arrays;
+
+import mazes.util.LongCellSpliterator;
+
+// Shape measures of a perfect maze, to tell apart mazes that are all valid
+// but play differently. Every cell is classed by its number of open sides
+// (an opening out of the maze, at the entrance or exit, counts as one):
+// dead ends have one, corridor cells two and junctions three or more. A
+// corridor is a chain of corridor cells between two other cells, or
+// between another cell and an opening out of the maze, and its length is the
+// number of corridor cells in it.
+//
+// Everything but the solution comes from one pass over the cells, reading
+// each cell's walls straight from the wall grid into primitive counters;
+// the corridors are walked from their ends during the same pass, so each
+// corridor cell is read at most twice more. The solution is found by a
+// depth-first walk from the entrance that never turns back, which in a tree
+// needs no record of the cells visited, only a stack as deep as the path.
+// Nothing is allocated per cell, so this is cheap enough to run on every
+// candidate of a search.
+public final class MazeStatistics {
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	// Differences between the indices of neighbors, in Direction.getIndex()
+	// order
+	private final long[] neighborOffsets;
+	// Coordinates of the cell being counted
+	private int[] cell;
+	
+	private long cellCount;
+	private long deadEndCount;
+	private long corridorCellCount;
+	private long junctionCount;
+	private long junctionSideCount;
+	private long corridorCount;
+	// The number of corridors of each length
+	private long[] corridorLengths = new long[16];
+	private int longestCorridor;
+	private int solutionLength;
+	
+	// Throws an IllegalArgumentException if the exit can't be reached from
+	// the entrance without turning back, which a perfect maze always allows
+	public MazeStatistics(WallGrid walls, int[] entrance, int[] exit) {
+		this(walls, walls.getIndex(entrance), walls.getIndex(exit));
+	}
+	public MazeStatistics(WallGrid walls, long entrance, long exit) {
+		if (!walls.isInterior(entrance) || !walls.isInterior(exit)) throw new IndexOutOfBoundsException();
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.neighborOffsets = new long[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			neighborOffsets[2 * d] = -walls.getStride(d);
+			neighborOffsets[2 * d + 1] = walls.getStride(d);
+		}
+		LongCellSpliterator cells = walls.getInteriorCells();
+		this.cell = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> countCell(index));
+		this.solutionLength = findSolutionLength(entrance, exit);
+	}
+	
+	private void countCell(long index) {
+		cellCount += 1;
+		int sides = getOpenSideCount(index);
+		if (sides == 2) {
+			corridorCellCount += 1;
+			// Corridors leading out of the maze are also walked from outside
+			for (int direction=0; direction<neighborOffsets.length; direction++) {
+				int dimension = direction >> 1;
+				boolean isPositive = (direction & 1) != 0;
+				if (cell[dimension] != (isPositive ? walls.getSideLength(dimension) - 1 : 0) || walls.getWall(index, dimension, isPositive)) continue;
+				walkCorridor(index + neighborOffsets[direction], index);
+			}
+			return;
+		}
+		if (sides == 1) {
+			deadEndCount += 1;
+		}
+		else if (sides > 2) {
+			junctionCount += 1;
+			junctionSideCount += sides;
+		}
+		for (int direction=0; direction<neighborOffsets.length; direction++) {
+			if (walls.getWall(index, direction >> 1, (direction & 1) != 0)) continue;
+			walkCorridor(index, index + neighborOffsets[direction]);
+		}
+	}
+	// Walks the corridor that leads from start into current, if current is a
+	// corridor cell. Every corridor is walked from both of its ends, and is
+	// only counted from the lower one.
+	private void walkCorridor(long start, long current) {
+		long previous = start;
+		int length = 0;
+		while (walls.isInterior(current) && getOpenSideCount(current) == 2) {
+			length += 1;
+			long next = getOtherSide(current, previous);
+			previous = current;
+			current = next;
+		}
+		if (length > 0 && start < current) {
+			recordCorridor(length);
+		}
+	}
+	private int getOpenSideCount(long index) {
+		int sides = 0;
+		for (int d=0; d<dimensionCount; d++) {
+			if (!walls.getWall(index, d, false)) sides += 1;
+			if (!walls.getWall(index, d, true)) sides += 1;
+		}
+		return sides;
+	}
+	// The neighbor through the open side of a corridor cell that doesn't lead
+	// back to previous
+	private long getOtherSide(long index, long previous) {
+		for (int direction=0; direction<neighborOffsets.length; direction++) {
+			long neighbor = index + neighborOffsets[direction];
+			if (neighbor != previous && !walls.getWall(index, direction >> 1, (direction & 1) != 0)) return neighbor;
+		}
+		throw new IllegalStateException();
+	}
+	private void recordCorridor(int length) {
+		if (length >= corridorLengths.length) {
+			corridorLengths = Arrays.copyOf(corridorLengths, Math.max(length + 1, corridorLengths.length * 2));
+		}
+		corridorLengths[length] += 1;
+		corridorCount += 1;
+		longestCorridor = Math.max(longestCorridor, length);
+	}
+	
+	// Each stack entry is a cell and the next direction to try from it. In a
+	// tree every side is stepped through at most twice, once each way, so
+	// more steps than that means the maze has a loop.
+	private int findSolutionLength(long entrance, long exit) {
+		long[] cells = new long[64];
+		int[] directions = new int[64];
+		int depth = 0;
+		cells[0] = entrance;
+		long steps = 0;
+		while (cells[depth] != exit) {
+			long index = cells[depth];
+			long previous = depth == 0 ? -1 : cells[depth - 1];
+			int direction = directions[depth];
+			while (direction < neighborOffsets.length) {
+				long neighbor = index + neighborOffsets[direction];
+				if (neighbor != previous && !walls.getWall(index, direction >> 1, (direction & 1) != 0) && walls.isInterior(neighbor)) break;
+				direction += 1;
+			}
+			if (++steps > 2 * cellCount) throw new IllegalArgumentException("The maze has a loop.");
+			if (direction == neighborOffsets.length) {
+				if (depth == 0) throw new IllegalArgumentException("The exit can't be reached.");
+				depth -= 1;
+				continue;
+			}
+			directions[depth] = direction + 1;
+			depth += 1;
+			if (depth == cells.length) {
+				cells = Arrays.copyOf(cells, depth * 2);
+				directions = Arrays.copyOf(directions, depth * 2);
+			}
+			cells[depth] = index + neighborOffsets[direction];
+			directions[depth] = 0;
+		}
+		return depth;
+	}
+	
+	public WallGrid getWalls() {
+		return walls;
+	}
+	public long getCellCount() {
+		return cellCount;
+	}
+	public long getDeadEndCount() {
+		return deadEndCount;
+	}
+	public long getCorridorCellCount() {
+		return corridorCellCount;
+	}
+	public long getJunctionCount() {
+		return junctionCount;
+	}
+	// The number of chains of corridor cells
+	public long getCorridorCount() {
+		return corridorCount;
+	}
+	// The number of corridors of each length, from 0 to the longest
+	public long[] getCorridorLengthHistogram() {
+		return Arrays.copyOf(corridorLengths, longestCorridor + 1);
+	}
+	public int getLongestCorridor() {
+		return longestCorridor;
+	}
+	public double getAverageCorridorLength() {
+		return corridorCount == 0 ? 0 : (double) corridorCellCount / corridorCount;
+	}
+	// Steps from the entrance to the exit
+	public int getSolutionLength() {
+		return solutionLength;
+	}
+	// The average number of ways on from a junction, not counting the way in
+	public double getBranchingFactor() {
+		return junctionCount == 0 ? 0 : (double) (junctionSideCount - junctionCount) / junctionCount;
+	}
+	// The average number of cells off the solution per dead end: high for
+	// mazes with few, long side branches (which wind like rivers), low for
+	// mazes with many short ones
+	public double getRiverFactor() {
+		return deadEndCount == 0 ? 0 : (double) (cellCount - solutionLength - 1) / deadEndCount;
+	}
+	
+	// One line, for reports during a search
+	public String getSummary() {
+		return String.format("solution %d, %d dead ends, %d junctions, %d corridors (longest %d), branching %.2f, river %.2f",
+				solutionLength, deadEndCount, junctionCount, corridorCount, longestCorridor, getBranchingFactor(), getRiverFactor());
+	}
+	
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-16s %10d%n", "cells", cellCount));
+		sb.append(String.format("%-16s %10d%n", "solution length", solutionLength));
+		sb.append(String.format("%-16s %10d%n", "dead ends", deadEndCount));
+		sb.append(String.format("%-16s %10d%n", "corridor cells", corridorCellCount));
+		sb.append(String.format("%-16s %10d%n", "junctions", junctionCount));
+		sb.append(String.format("%-16s %10.2f%n", "branching", getBranchingFactor()));
+		sb.append(String.format("%-16s %10.2f%n", "river", getRiverFactor()));
+		sb.append(String.format("%-16s %10s%n", "corridor length", "corridors"));
+		for (int length=1; length<=longestCorridor; length++) {
+			if (corridorLengths[length] != 0) {
+				sb.append(String.format("%-16d %10d%n", length, corridorLengths[length]));
+			}
+		}
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,195 @@
+package mazes.gen;
+
+import java.util.Arrays;
+
+// Distances and paths between any two cells of a perfect maze, which is a
+// tree, without searching it. The tree is rooted at one cell (usually the
+// entrance) and split into heavy paths: each cell continues the path of the
+// child with the largest subtree. Any cell is then O(log n) paths away from
+// the root, so lowest common ancestors, distances and the ancestor at a
+// given depth take O(log n) time, and a path takes time proportional to its
+// length. Building the index takes a few int arrays and time linear in the
+// number of cells; the grid must have at most Integer.MAX_VALUE indices.
+//
+// Cells are identified by their wall grid index. The index describes the
+// walls as they were when it was built.
+public final class MazeTreeIndex {
+	
+	private final WallGrid walls;
+	private final int root;
+	// Indexed like the wall grid: each cell's parent (the root is its own),
+	// its depth (-1 for the padding), the child continuing its heavy path
+	// (-1 for none), the first cell of its heavy path, and its position in
+	// the order in which heavy paths are laid out one after another
+	private final int[] parents;
+	private final int[] depths;
+	private final int[] heavyChildren;
+	private final int[] heads;
+	private final int[] positions;
+	// The cells, by position
+	private final int[] cells;
+	
+	// Throws an IllegalArgumentException if the maze isn't a tree
+	public MazeTreeIndex(WallGrid walls, int[] root) {
+		this(walls, walls.getIndex(root));
+	}
+	public MazeTreeIndex(WallGrid walls, long root) {
+		if (walls.getIndexCount() > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many cells for the index.");
+		if (!walls.isInterior(root)) throw new IndexOutOfBoundsException();
+		this.walls = walls;
+		this.root = (int) root;
+		int indexCount = (int) walls.getIndexCount();
+		int cellCount = (int) walls.getCellCount();
+		int dimensionCount = walls.getDimensionCount();
+		int[] neighborOffsets = new int[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			neighborOffsets[2 * d] = (int) -walls.getStride(d);
+			neighborOffsets[2 * d + 1] = (int) walls.getStride(d);
+		}
+		this.parents = new int[indexCount];
+		this.depths = new int[indexCount];
+		this.heavyChildren = new int[indexCount];
+		this.heads = new int[indexCount];
+		this.positions = new int[indexCount];
+		this.cells = new int[cellCount];
+		
+		// Breadth-first order, in cells for now, so parents come before
+		// their children. Cells not reached yet have a depth of -2.
+		Arrays.fill(depths, -1);
+		walls.getInteriorCells().forEachRemaining((long index) -> depths[(int) index] = -2);
+		int[] order = cells;
+		int count = 0;
+		order[count++] = this.root;
+		parents[this.root] = this.root;
+		depths[this.root] = 0;
+		for (int i=0; i<count; i++) {
+			int cell = order[i];
+			for (int direction=0; direction<neighborOffsets.length; direction++) {
+				int neighbor = cell + neighborOffsets[direction];
+				if (depths[neighbor] == -1 || neighbor == parents[cell] || walls.getWall(cell, direction >> 1, (direction & 1) != 0)) continue;
+				if (depths[neighbor] != -2) throw new IllegalArgumentException("The maze has a loop.");
+				parents[neighbor] = cell;
+				depths[neighbor] = depths[cell] + 1;
+				order[count++] = neighbor;
+			}
+		}
+		if (count != cellCount) throw new IllegalArgumentException("The maze isn't connected.");
+		
+		// Subtree sizes, children before parents; heads holds them for now
+		Arrays.fill(heavyChildren, -1);
+		for (int i=count-1; i>=0; i--) {
+			int cell = order[i];
+			heads[cell] += 1;
+			if (cell == this.root) continue;
+			int parent = parents[cell];
+			heads[parent] += heads[cell];
+			if (heavyChildren[parent] == -1 || heads[cell] > heads[heavyChildren[parent]]) {
+				heavyChildren[parent] = cell;
+			}
+		}
+		for (int i=0; i<count; i++) {
+			int cell = order[i];
+			heads[cell] = cell == this.root || heavyChildren[parents[cell]] != cell ? cell : heads[parents[cell]];
+		}
+		// Lay out the heavy paths, each from its head down, in the
+		// breadth-first order of their heads; positions is filled in first,
+		// since cells is still the order
+		int position = 0;
+		for (int i=0; i<count; i++) {
+			int head = order[i];
+			if (heads[head] != head) continue;
+			for (int cell=head; cell!=-1; cell=heavyChildren[cell]) {
+				positions[cell] = position++;
+			}
+		}
+		for (int cell=0; cell<indexCount; cell++) {
+			if (depths[cell] >= 0) {
+				cells[positions[cell]] = cell;
+			}
+		}
+	}
+	
+	public WallGrid getWalls() {
+		return walls;
+	}
+	public long getRoot() {
+		return root;
+	}
+	// Distance from the root
+	public int getDepth(long cell) {
+		return depths[checkCell(cell)];
+	}
+	public long getParent(long cell) {
+		return parents[checkCell(cell)];
+	}
+	public long getLowestCommonAncestor(long a, long b) {
+		return lowestCommonAncestor(checkCell(a), checkCell(b));
+	}
+	public int getDistance(int[] a, int[] b) {
+		return getDistance(walls.getIndex(a), walls.getIndex(b));
+	}
+	public int getDistance(long a, long b) {
+		int first = checkCell(a);
+		int second = checkCell(b);
+		return depths[first] + depths[second] - 2 * depths[lowestCommonAncestor(first, second)];
+	}
+	// The cell's ancestor at the given depth (at most the cell's own)
+	public long getAncestor(long cell, int depth) {
+		int index = checkCell(cell);
+		if (depth < 0 || depth > depths[index]) throw new IllegalArgumentException();
+		return ancestor(index, depth);
+	}
+	// The neighbor of from on the path to to, or from itself if they are the
+	// same cell; for hints
+	public long getNextStep(long from, long to) {
+		int first = checkCell(from);
+		int second = checkCell(to);
+		if (first == second) return first;
+		if (lowestCommonAncestor(first, second) != first) return parents[first];
+		return ancestor(second, depths[first] + 1);
+	}
+	// The cells from a to b, inclusive, by wall grid index, as MazeSolver
+	// returns them
+	public int[] getPath(int[] a, int[] b) {
+		return getPath(walls.getIndex(a), walls.getIndex(b));
+	}
+	public int[] getPath(long a, long b) {
+		int first = checkCell(a);
+		int second = checkCell(b);
+		int ancestor = lowestCommonAncestor(first, second);
+		int up = depths[first] - depths[ancestor];
+		int down = depths[second] - depths[ancestor];
+		int[] path = new int[up + down + 1];
+		for (int i=0, cell=first; i<=up; i++, cell=parents[cell]) {
+			path[i] = cell;
+		}
+		for (int i=up+down, cell=second; i>up; i--, cell=parents[cell]) {
+			path[i] = cell;
+		}
+		return path;
+	}
+	
+	private int lowestCommonAncestor(int a, int b) {
+		while (heads[a] != heads[b]) {
+			if (depths[heads[a]] > depths[heads[b]]) {
+				a = parents[heads[a]];
+			}
+			else {
+				b = parents[heads[b]];
+			}
+		}
+		return depths[a] < depths[b] ? a : b;
+	}
+	private int ancestor(int cell, int depth) {
+		while (depths[heads[cell]] > depth) {
+			cell = parents[heads[cell]];
+		}
+		// The cells of a heavy path are laid out in order of depth
+		return cells[positions[cell] - (depths[cell] - depth)];
+	}
+	private int checkCell(long index) {
+		if (index < 0 || index >= depths.length || depths[(int) index] < 0) throw new IndexOutOfBoundsException();
+		return (int) index;
+	}
+	
+}
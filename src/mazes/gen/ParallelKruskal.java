@@ -0,0 +1,195 @@
+package mazes.gen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mazes.util.LongCellSpliterator;
+
+// Randomized Kruskal's algorithm over the walls between the cells of a
+// WallGrid, run on every core. Instead of shuffling a list of walls, each
+// wall gets a random priority from a hash of the seed and its bit index;
+// Kruskal's algorithm removes the walls in priority order whenever they join
+// two separate regions, so the maze is the minimum spanning tree for those
+// priorities. The priorities are distinct, so that tree is unique, and it
+// can be built in rounds, as in Boruvka's algorithm: every region picks the
+// lowest-priority wall leading out of it, and all of those walls are removed
+// at once. Regions are tracked by a lock-free union-find, so the cells of a
+// round can be handled by any number of threads in any order, and the maze
+// for a seed is always the one Kruskal's algorithm would carve.
+public final class ParallelKruskal {
+	
+	private static final long gamma = 0x9E3779B97F4A7C15L;
+	// Marks a region that hasn't picked a wall yet this round
+	private static final long NONE = Long.MAX_VALUE;
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	private final int[] sideLengths;
+	private final long[] strides;
+	private final long seed;
+	// A candidate wall is its priority followed by its bit index in the
+	// wall grid (index * dimensionCount + dimension) in the low wallBits bits,
+	// so candidates compare by priority and are never equal
+	private final int wallBits;
+	private final long wallMask;
+	// Indexed like the wall grid: the parent of each cell in the union-find
+	// (roots are their own parents, and parents always have lower indices),
+	// and the best candidate found this round for the region of each root
+	private final AtomicIntegerArray parents;
+	private final AtomicLongArray candidates;
+	private final int partCount;
+	
+	private ParallelKruskal(WallGrid walls, long seed) {
+		if (walls.getIndexCount() > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many cells for the union-find.");
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.sideLengths = walls.getSideLengths();
+		this.strides = new long[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			strides[d] = walls.getStride(d);
+		}
+		this.seed = seed;
+		this.wallBits = 64 - Long.numberOfLeadingZeros(walls.getIndexCount() * dimensionCount);
+		this.wallMask = (1L << wallBits) - 1;
+		int indexCount = (int) walls.getIndexCount();
+		this.parents = new AtomicIntegerArray(indexCount);
+		for (int i=0; i<indexCount; i++) {
+			parents.set(i, i);
+		}
+		this.candidates = new AtomicLongArray(indexCount);
+		for (int i=0; i<indexCount; i++) {
+			candidates.set(i, NONE);
+		}
+		this.partCount = ForkJoinPool.getCommonPoolParallelism() * 4;
+	}
+	
+	// Removes walls from a grid with every wall in place until it is a
+	// perfect maze; the walls removed depend only on the seed. The grid must
+	// have at most Integer.MAX_VALUE indices.
+	public static void carve(WallGrid walls, long seed) {
+		ParallelKruskal kruskal = new ParallelKruskal(walls, seed);
+		while (kruskal.performRound()) {}
+	}
+	
+	// Returns false once there is only one region left
+	private boolean performRound() {
+		newParts().parallelStream().forEach(this::findCandidates);
+		List<long[]> removed = new ArrayList<>();
+		newParts().parallelStream().map(this::joinRegions).forEachOrdered(removed::add);
+		// Neighboring cells share words of the wall grid, so the walls are
+		// removed on this thread
+		boolean removedAny = false;
+		for (long[] part : removed) {
+			for (int i=1; i<=part[0]; i++) {
+				long wall = part[i];
+				walls.setWall(wall / dimensionCount, (int) (wall % dimensionCount), true, false);
+				removedAny = true;
+			}
+		}
+		return removedAny;
+	}
+	// The interior cells, split into about partCount runs
+	private List<LongCellSpliterator> newParts() {
+		List<LongCellSpliterator> parts = new ArrayList<>();
+		parts.add(walls.getInteriorCells());
+		for (int i=0; i<parts.size() && parts.size() < partCount; ) {
+			LongCellSpliterator half = parts.get(i).trySplit();
+			if (half == null) {
+				i += 1;
+			}
+			else {
+				parts.add(half);
+			}
+		}
+		return parts;
+	}
+	
+	// Offers each wall on the positive side of these cells to the regions on
+	// both sides of it
+	private void findCandidates(LongCellSpliterator cells) {
+		int[] cell = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> {
+			int root = find((int) index);
+			for (int d=0; d<dimensionCount; d++) {
+				if (cell[d] == sideLengths[d] - 1) continue;
+				int neighborRoot = find((int) (index + strides[d]));
+				if (neighborRoot != root) {
+					long candidate = getCandidate(index * dimensionCount + d);
+					offer(root, candidate);
+					offer(neighborRoot, candidate);
+				}
+			}
+		});
+	}
+	// Joins each region to the one across its best candidate, returning the
+	// walls that were removed, after their count
+	private long[] joinRegions(LongCellSpliterator cells) {
+		long[][] removed = {new long[16]};
+		cells.forEachRemaining((long index) -> {
+			long candidate = candidates.get((int) index);
+			if (candidate == NONE) return;
+			candidates.set((int) index, NONE);
+			long wall = candidate & wallMask;
+			long cell = wall / dimensionCount;
+			long neighbor = cell + strides[(int) (wall % dimensionCount)];
+			// Both regions may have picked the same wall; only one of them
+			// joins the two
+			if (union((int) cell, (int) neighbor)) {
+				long[] part = removed[0];
+				int count = (int) part[0] + 1;
+				if (count == part.length) {
+					part = removed[0] = Arrays.copyOf(part, count * 2);
+				}
+				part[count] = wall;
+				part[0] = count;
+			}
+		});
+		return removed[0];
+	}
+	
+	private long getCandidate(long wall) {
+		long priority = SeedStream.mix(seed + wall * gamma) >>> (wallBits + 1);
+		return priority << wallBits | wall;
+	}
+	private void offer(int root, long candidate) {
+		long current = candidates.get(root);
+		while (candidate < current && !candidates.compareAndSet(root, current, candidate)) {
+			current = candidates.get(root);
+		}
+	}
+	
+	// Path halving, which other threads may race with harmlessly: each
+	// compareAndSet only ever moves a cell closer to the same root
+	private int find(int cell) {
+		while (true) {
+			int parent = parents.get(cell);
+			if (parent == cell) return cell;
+			int grandparent = parents.get(parent);
+			if (grandparent != parent) {
+				parents.compareAndSet(cell, parent, grandparent);
+			}
+			cell = grandparent;
+		}
+	}
+	// Returns false if the cells were already in the same region
+	private boolean union(int a, int b) {
+		while (true) {
+			a = find(a);
+			b = find(b);
+			if (a == b) return false;
+			// Linking the higher root under the lower one keeps the parents
+			// acyclic; if a is no longer a root, try again
+			if (a < b) {
+				int swap = a;
+				a = b;
+				b = swap;
+			}
+			if (parents.compareAndSet(a, a, b)) return true;
+		}
+	}
+	
+}
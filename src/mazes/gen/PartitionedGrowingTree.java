@@ -0,0 +1,158 @@
+package mazes.gen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import mazes.util.LongCellSpliterator;
+
+// The growing tree algorithm run separately in blocks of a WallGrid, one
+// block per thread, so that large mazes keep the texture of the randomness
+// parameter while using every core. Each block is a perfect maze of its own,
+// grown from a random cell with a seed derived from the seed and the block's
+// number; the blocks are then joined by a random spanning tree of the block
+// grid, opening one random wall of the seam between each pair of blocks it
+// joins, so the whole grid is a perfect maze. The result depends only on the
+// seed, not on how the blocks were scheduled.
+public final class PartitionedGrowingTree {
+	
+	private static final long gamma = 0x9E3779B97F4A7C15L;
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	private final int[] sideLengths;
+	private final float randomness;
+	private final int[] blockSideLengths;
+	private final long seed;
+	// Blocks are numbered in row-major order, the first dimension varying
+	// fastest
+	private final int[] blockCounts;
+	private final int[] blockStrides;
+	private final int blockCount;
+	
+	private PartitionedGrowingTree(WallGrid walls, float randomness, int[] blockSideLengths, long seed) {
+		if (blockSideLengths.length != walls.getDimensionCount()) throw new IllegalArgumentException();
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.sideLengths = walls.getSideLengths();
+		this.randomness = randomness;
+		this.blockSideLengths = blockSideLengths.clone();
+		this.seed = seed;
+		this.blockCounts = new int[dimensionCount];
+		this.blockStrides = new int[dimensionCount];
+		long blockCount = 1;
+		for (int d=0; d<dimensionCount; d++) {
+			if (blockSideLengths[d] < 1) throw new IllegalArgumentException();
+			blockCounts[d] = (sideLengths[d] + blockSideLengths[d] - 1) / blockSideLengths[d];
+			blockStrides[d] = (int) blockCount;
+			blockCount *= blockCounts[d];
+			if (blockCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many blocks.");
+		}
+		this.blockCount = (int) blockCount;
+	}
+	
+	// Removes walls from a grid with every wall in place until it is a
+	// perfect maze. Blocks at the far end of a dimension are smaller if the
+	// side length isn't a multiple of the block's.
+	public static void carve(WallGrid walls, float randomness, int[] blockSideLengths, long seed) {
+		PartitionedGrowingTree partition = new PartitionedGrowingTree(walls, randomness, blockSideLengths, seed);
+		IntStream.range(0, partition.blockCount).parallel().forEach(partition::carveBlock);
+		partition.stitchBlocks();
+	}
+	
+	private void carveBlock(int block) {
+		int[] low = getLow(block);
+		int[] size = getSize(block);
+		Random random = new Random(SeedStream.mix(seed + (block + 1) * gamma));
+		int[] start = new int[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			start[d] = random.nextInt(size[d]);
+		}
+		GrowingTreeMazeGenerator gen = GrowingTreeMazeGenerator.generateBlock(size, randomness, start, random.nextLong());
+		// Only the walls between the block's cells are copied; the generator
+		// also opened an exit out of the block, which is left out. Blocks
+		// share words of the wall grid, so they are copied one at a time.
+		WallGrid blockWalls = gen.getWalls();
+		LongCellSpliterator cells = blockWalls.getInteriorCells();
+		int[] cell = cells.getCoordinates();
+		long lowIndex = walls.getIndex(low);
+		synchronized (walls) {
+			cells.forEachRemaining((long index) -> {
+				long target = lowIndex;
+				for (int d=0; d<dimensionCount; d++) {
+					target += cell[d] * walls.getStride(d);
+				}
+				for (int d=0; d<dimensionCount; d++) {
+					if (cell[d] < size[d] - 1 && !blockWalls.getWall(index, d, true)) {
+						walls.setWall(target, d, true, false);
+					}
+				}
+			});
+		}
+	}
+	// Randomized Kruskal's algorithm over the block grid, opening one wall of
+	// the seam for each pair of blocks it joins
+	private void stitchBlocks() {
+		Random random = new Random(seed);
+		List<Long> seams = new ArrayList<>();
+		int[] blockCoordinates = new int[dimensionCount];
+		for (int block=0; block<blockCount; block++) {
+			for (int d=0; d<dimensionCount; d++) {
+				if (blockCoordinates[d] < blockCounts[d] - 1) {
+					seams.add((long) block * dimensionCount + d);
+				}
+			}
+			for (int d=0; d<dimensionCount && ++blockCoordinates[d] == blockCounts[d]; d++) {
+				blockCoordinates[d] = 0;
+			}
+		}
+		Collections.shuffle(seams, random);
+		int[] parents = new int[blockCount];
+		for (int block=0; block<blockCount; block++) {
+			parents[block] = block;
+		}
+		for (long seam : seams) {
+			int block = (int) (seam / dimensionCount);
+			int dimension = (int) (seam % dimensionCount);
+			int a = find(parents, block);
+			int b = find(parents, block + blockStrides[dimension]);
+			if (a == b) continue;
+			parents[a] = b;
+			// A random cell on the block's face towards its neighbor
+			int[] low = getLow(block);
+			int[] size = getSize(block);
+			int[] cell = new int[dimensionCount];
+			for (int d=0; d<dimensionCount; d++) {
+				cell[d] = d == dimension ? low[d] + size[d] - 1 : low[d] + random.nextInt(size[d]);
+			}
+			walls.setWall(walls.getIndex(cell), dimension, true, false);
+		}
+	}
+	private static int find(int[] parents, int block) {
+		while (parents[block] != block) {
+			parents[block] = parents[parents[block]];
+			block = parents[block];
+		}
+		return block;
+	}
+	
+	// Coordinates of the block's first cell, and its side lengths
+	private int[] getLow(int block) {
+		int[] low = new int[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			low[d] = block / blockStrides[d] % blockCounts[d] * blockSideLengths[d];
+		}
+		return low;
+	}
+	private int[] getSize(int block) {
+		int[] low = getLow(block);
+		int[] size = new int[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			size[d] = Math.min(blockSideLengths[d], sideLengths[d] - low[d]);
+		}
+		return size;
+	}
+	
+}
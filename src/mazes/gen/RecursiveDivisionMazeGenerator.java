@@ -0,0 +1,186 @@
+package mazes.gen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mazes.util.Direction;
+import mazes.util.MultiDimensionalArray;
+
+// Recursive division: every chamber (a box of cells, at first the whole
+// maze) is split in two across a random plane of its longest dimension,
+// leaving one passage through the plane, and the halves are divided in
+// turn until they are single cells. The usual version starts from an empty
+// grid and adds the dividing walls; here every wall starts in place and
+// only the passages are opened, which comes to the same maze, since each
+// wall lies in exactly one dividing plane.
+//
+// Chambers are ForkJoin tasks, so the maze is built on every core with no
+// state but the wall grid. Each chamber draws its choices from its own seed,
+// handed down by its parent, so the maze depends only on the seed. The
+// entrance is the first cell and the exit the last, both opened out of the
+// maze.
+public final class RecursiveDivisionMazeGenerator {
+	
+	// Chambers with at most this many cells are divided on one thread, with
+	// all of their passages opened together
+	private static final long sequentialThreshold = 1 << 12;
+	
+	private final int[] sideLengths;
+	private final int dimensionCount;
+	private final long seed;
+	private final WallGrid walls;
+	private final int[] entrance;
+	private final int[] exit;
+	private boolean isFinished;
+	
+	public RecursiveDivisionMazeGenerator(int[] sideLengths, long seed) {
+		if (sideLengths == null) throw new NullPointerException();
+		if (sideLengths.length < 2) throw new IllegalArgumentException();
+		for (int sideLength : sideLengths) {
+			if (sideLength < 1) throw new IllegalArgumentException();
+		}
+		this.sideLengths = sideLengths.clone();
+		this.dimensionCount = sideLengths.length;
+		this.seed = seed;
+		this.walls = new WallGrid(this.sideLengths, true);
+		this.entrance = new int[dimensionCount];
+		this.exit = new int[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			exit[d] = sideLengths[d] - 1;
+		}
+	}
+	
+	// Runs the algorithm to completion
+	public void generate() {
+		if (isFinished) return;
+		ForkJoinPool.commonPool().invoke(new Chamber(new int[dimensionCount], sideLengths.clone(), seed));
+		Direction entranceDirection = MultiDimensionalArray.getDirectionOutOfGrid(entrance, sideLengths);
+		Direction exitDirection = MultiDimensionalArray.getDirectionOutOfGrid(exit, sideLengths);
+		// A maze of one cell is left through the opposite side
+		if (Arrays.equals(entrance, exit)) {
+			exitDirection = entranceDirection.getOpposite();
+		}
+		walls.setWall(entrance, entranceDirection, false);
+		walls.setWall(exit, exitDirection, false);
+		isFinished = true;
+	}
+	
+	public boolean isFinished() {
+		return isFinished;
+	}
+	public WallGrid getWalls() {
+		return walls;
+	}
+	// Snapshot for code written against CellWalls
+	public MultiDimensionalArray<CellWalls> getMaze() {
+		return walls.toCellWallsArray();
+	}
+	public int[] getSideLengths() {
+		return sideLengths.clone();
+	}
+	// Both inside the maze, like GrowingTreeMazeGenerator's
+	public int[] getEntrance() {
+		return entrance.clone();
+	}
+	public int[] getExit() {
+		return exit.clone();
+	}
+	
+	private void openWall(long wall) {
+		walls.setWall(wall / dimensionCount, (int) (wall % dimensionCount), true, false);
+	}
+	
+	// The cells from low (inclusive) to high (exclusive) in each dimension
+	private final class Chamber extends RecursiveAction {
+		
+		public static final long serialVersionUID = -3870952168240517236L;
+		
+		private final int[] low;
+		private final int[] high;
+		private final long seed;
+		// The wall opened by divide(), by its bit index in the wall grid
+		// (index * dimensionCount + dimension)
+		private long passage = -1;
+		
+		private Chamber(int[] low, int[] high, long seed) {
+			this.low = low;
+			this.high = high;
+			this.seed = seed;
+		}
+		
+		@Override protected void compute() {
+			if (getCellCount() <= sequentialThreshold) {
+				// Neighboring chambers share words of the wall grid, so
+				// walls are only opened while holding it
+				long[] passages = new long[(int) getCellCount()];
+				int passageCount = divideAll(this, passages, 0);
+				synchronized (walls) {
+					for (int i=0; i<passageCount; i++) {
+						openWall(passages[i]);
+					}
+				}
+				return;
+			}
+			Chamber[] halves = divide();
+			synchronized (walls) {
+				openWall(passage);
+			}
+			invokeAll(halves[0], halves[1]);
+		}
+		// Divides the chamber and its halves on this thread, adding the
+		// passages to the array after count, and returns the new count
+		private int divideAll(Chamber chamber, long[] passages, int count) {
+			Chamber[] halves = chamber.divide();
+			if (halves == null) return count;
+			passages[count++] = chamber.passage;
+			count = divideAll(halves[0], passages, count);
+			return divideAll(halves[1], passages, count);
+		}
+		
+		// Picks the dividing plane and the passage through it, returning the
+		// two halves, or null for a single cell
+		private Chamber[] divide() {
+			SplittableRandom random = new SplittableRandom(seed);
+			// The longest dimension, with ties broken at random
+			int dimension = -1;
+			int longest = 1;
+			int tieCount = 0;
+			for (int d=0; d<dimensionCount; d++) {
+				int extent = high[d] - low[d];
+				if (extent > longest) {
+					dimension = d;
+					longest = extent;
+					tieCount = 1;
+				}
+				else if (extent == longest && extent > 1 && random.nextInt(++tieCount) == 0) {
+					dimension = d;
+				}
+			}
+			if (dimension == -1) return null;
+			// The upper half starts at split; the passage leads into it from
+			// the cell below
+			int split = low[dimension] + 1 + random.nextInt(longest - 1);
+			int[] cell = new int[dimensionCount];
+			for (int d=0; d<dimensionCount; d++) {
+				cell[d] = d == dimension ? split - 1 : low[d] + random.nextInt(high[d] - low[d]);
+			}
+			passage = walls.getIndex(cell) * dimensionCount + dimension;
+			int[] lowerHigh = high.clone();
+			lowerHigh[dimension] = split;
+			int[] upperLow = low.clone();
+			upperLow[dimension] = split;
+			return new Chamber[] {new Chamber(low, lowerHigh, random.nextLong()), new Chamber(upperLow, high, random.nextLong())};
+		}
+		private long getCellCount() {
+			long cellCount = 1;
+			for (int d=0; d<dimensionCount; d++) {
+				cellCount *= high[d] - low[d];
+			}
+			return cellCount;
+		}
+		
+	}
+	
+}
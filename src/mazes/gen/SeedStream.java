@@ -0,0 +1,92 @@
+package mazes.gen;
+
+import util.MathUtil;
+
+// A reproducible sequence of candidate seeds for batch generation. The seed of
+// candidate number i depends only on the batch seed and i (it is the SplitMix64
+// hash of the two), so candidates can be generated in any order, on any
+// thread or machine, and a batch can be resumed from any candidate.
+//
+// A stream may be restricted to a shard: shard k of n owns the candidates
+// k, k+n, k+2n, ... of its parent stream. Shards of the same stream are
+// disjoint, and together they cover the whole stream, so every candidate is
+// tried by exactly one worker. A search that stops after a number of valid
+// mazes in each shard doesn't save the same mazes as one that stops after
+// that number in the whole stream, though.
+public final class SeedStream {
+	
+	private static final long gamma = 0x9E3779B97F4A7C15L;
+	
+	private final long batchSeed;
+	private final float randomness;
+	private final byte size;
+	private final byte algorithm;
+	// This stream owns the candidates shardIndex + n * shardCount
+	private final long shardIndex;
+	private final long shardCount;
+	
+	public SeedStream(long batchSeed, float randomness, byte size) {
+		this(batchSeed, randomness, size, GrowingTreeMazeGenerator.Seed.GROWING_TREE);
+	}
+	public SeedStream(long batchSeed, float randomness, byte size, byte algorithm) {
+		this(batchSeed, randomness, size, algorithm, 0, 1);
+	}
+	private SeedStream(long batchSeed, float randomness, byte size, byte algorithm, long shardIndex, long shardCount) {
+		this.batchSeed = batchSeed;
+		this.randomness = randomness;
+		this.size = size;
+		this.algorithm = algorithm;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+	}
+	
+	// Shards may themselves be split into shards.
+	public SeedStream shard(int index, int count) {
+		if (count < 1 || index < 0 || index >= count) throw new IllegalArgumentException();
+		return new SeedStream(batchSeed, randomness, size, algorithm, shardIndex + index * shardCount, shardCount * count);
+	}
+	
+	// Number of the n-th candidate (counting from 0) owned by this stream
+	public long getCandidate(long n) {
+		if (n < 0) throw new IllegalArgumentException();
+		return shardIndex + n * shardCount;
+	}
+	public GrowingTreeMazeGenerator.Seed getSeed(long candidate) {
+		if (candidate < 0) throw new IllegalArgumentException();
+		return new GrowingTreeMazeGenerator.Seed(mix(batchSeed + (candidate + 1) * gamma), randomness, size, algorithm);
+	}
+	// Seed of the n-th candidate owned by this stream
+	public GrowingTreeMazeGenerator.Seed getNthSeed(long n) {
+		return getSeed(getCandidate(n));
+	}
+	
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	public long getBatchSeed() {
+		return batchSeed;
+	}
+	public float getRandomness() {
+		return randomness;
+	}
+	public byte getSize() {
+		return size;
+	}
+	public byte getAlgorithm() {
+		return algorithm;
+	}
+	public long getShardIndex() {
+		return shardIndex;
+	}
+	public long getShardCount() {
+		return shardCount;
+	}
+	
+	@Override public String toString() {
+		return String.format("batch %s, shard %d of %d", MathUtil.toHexString(batchSeed), shardIndex, shardCount);
+	}
+	
+}
@@ -0,0 +1,161 @@
+package mazes.gen;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import mazes.util.MazeIO;
+
+// Checks that generate3DMaze still produces exactly the same maze for a given
+// seed, so that changes to the generator cannot silently invalidate mazes that
+// have already been cut. Two sources are checked:
+//  - every saved maze that records its seed is regenerated and compared with
+//    the saved maze wall by wall;
+//  - every line of the corpus file (seeds.txt, next to the saved mazes) holds
+//    a seed string and the fingerprint of the maze that the original
+//    generator produced for it.
+// It also checks that mazes grown in blocks (see PartitionedGrowingTree) are
+// perfect when the last blocks are thin, with sides of 1 in two dimensions.
+public final class SeedVerifier {
+	
+	public static final String corpusName = "seeds.txt";
+	
+	private SeedVerifier() {}
+	
+	public static void main(String[] args) {
+		int failures = verifySavedMazes(true) + verifyCorpus(true) + verifyPartitions(true);
+		if (failures == 0) {
+			System.out.println("All mazes were reproduced exactly.");
+		}
+		else {
+			System.out.printf("%d mazes were not reproduced.%n", failures);
+			System.exit(1);
+		}
+	}
+	
+	public static int verifySavedMazes(boolean doOutput) {
+		int checked = 0, skipped = 0, failures = 0;
+		for (String mazeName : MazeIO.listMazes()) {
+			GrowingTreeMazeGenerator saved = MazeIO.loadMaze(mazeName, doOutput);
+			if (saved == null || saved.getSeed() == null || !saved.isFinished()) {
+				// Mazes saved before seeds were recorded, or not made by
+				// generate3DMaze, have no seed and can't be regenerated
+				skipped += 1;
+				continue;
+			}
+			checked += 1;
+			if (!reproduces(saved)) {
+				failures += 1;
+				if (doOutput) System.out.printf("Maze %s differs from seed %s.%n", mazeName, saved.getSeed().getSeedString());
+			}
+		}
+		if (doOutput) System.out.printf("Checked %d saved mazes (%d without a seed skipped), %d failed.%n", checked, skipped, failures);
+		return failures;
+	}
+	public static int verifyCorpus(boolean doOutput) {
+		List<String> lines = MazeIO.loadLines(corpusName, doOutput);
+		if (lines == null) return 1;
+		int checked = 0, failures = 0;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			String[] fields = line.split("\\s+");
+			GrowingTreeMazeGenerator.Seed seed = new GrowingTreeMazeGenerator.Seed(fields[0]);
+			long expected = Long.parseLong(fields[1], 16);
+			checked += 1;
+			if (fingerprint(GrowingTreeMazeGenerator.generate3DMaze(seed)) != expected) {
+				failures += 1;
+				if (doOutput) System.out.printf("Seed %s no longer produces fingerprint %s.%n", fields[0], fields[1]);
+			}
+		}
+		if (doOutput) System.out.printf("Checked %d corpus seeds, %d failed.%n", checked, failures);
+		return failures;
+	}
+	
+	// Side lengths and block side lengths that leave a remainder of 1 in at
+	// least two dimensions
+	private static final int[][][] partitionShapes = {
+		{{9, 9, 9}, {2, 2, 2}},
+		{{9, 9, 9}, {4, 4, 4}},
+		{{5, 9, 9}, {2, 2, 2}},
+		{{5, 9, 9}, {4, 4, 4}},
+		{{13, 13, 13}, {2, 2, 2}},
+		{{13, 13, 13}, {3, 3, 3}},
+		{{13, 13, 13}, {4, 4, 4}},
+		{{7, 9, 5}, {3, 4, 2}},
+		{{9, 9}, {4, 4}},
+	};
+	public static int verifyPartitions(boolean doOutput) {
+		int failures = 0;
+		for (int[][] shape : partitionShapes) {
+			String description = Arrays.toString(shape[0]) + " in blocks of " + Arrays.toString(shape[1]);
+			try {
+				int[] entrance = new int[shape[0].length];
+				entrance[0] = -1;
+				GrowingTreeMazeGenerator gen = new GrowingTreeMazeGenerator(shape[0], 0.5f, entrance, 1);
+				gen.useParallelBlocks(shape[1]);
+				gen.generate();
+				new MazeTreeIndex(gen.getWalls(), gen.getEntrance());
+			}
+			catch (RuntimeException e) {
+				failures += 1;
+				if (doOutput) System.out.printf("Maze %s isn't a perfect maze: %s%n", description, e);
+			}
+		}
+		if (doOutput) System.out.printf("Checked %d partitioned mazes, %d failed.%n", partitionShapes.length, failures);
+		return failures;
+	}
+	
+	public static boolean reproduces(GrowingTreeMazeGenerator saved) {
+		GrowingTreeMazeGenerator regenerated = GrowingTreeMazeGenerator.generate3DMaze(saved.getSeed());
+		return Arrays.equals(saved.getEntrance(), regenerated.getEntrance())
+				&& Arrays.equals(saved.getExit(), regenerated.getExit())
+				&& saved.getWalls().equals(regenerated.getWalls());
+	}
+	
+	// A checksum of the side lengths, entrance, exit and every wall of every
+	// cell (in row-major order, walls in Direction.getIndex() order). It
+	// depends only on the maze, not on how the walls are stored.
+	public static long fingerprint(GrowingTreeMazeGenerator gen) {
+		WallGrid walls = gen.getWalls();
+		int dimensionCount = walls.getDimensionCount();
+		CRC32 crc = new CRC32();
+		for (int d=0; d<dimensionCount; d++) {
+			updateInt(crc, walls.getSideLength(d));
+		}
+		for (int component : gen.getEntrance()) {
+			updateInt(crc, component);
+		}
+		for (int component : gen.getExit()) {
+			updateInt(crc, component);
+		}
+		int[] cell = new int[dimensionCount];
+		do {
+			long index = walls.getIndex(cell);
+			for (int direction=0; direction<dimensionCount*2; direction++) {
+				crc.update(walls.getWall(index, direction >> 1, (direction & 1) != 0) ? 1 : 0);
+			}
+		}
+		while (nextCell(cell, walls));
+		return crc.getValue();
+	}
+	private static void updateInt(CRC32 crc, int value) {
+		crc.update(value >>> 24);
+		crc.update(value >>> 16);
+		crc.update(value >>> 8);
+		crc.update(value);
+	}
+	private static boolean nextCell(int[] cell, WallGrid walls) {
+		for (int d=0; d<cell.length; d++) {
+			if (cell[d] == walls.getSideLength(d) - 1) {
+				cell[d] = 0;
+			}
+			else {
+				cell[d] += 1;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+}
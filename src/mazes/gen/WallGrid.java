@@ -0,0 +1,269 @@
+package mazes.gen;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import mazes.util.BitStorage;
+import mazes.util.ChunkedBitArray;
+import mazes.util.Direction;
+import mazes.util.LongCellSpliterator;
+import mazes.util.MultiDimensionalArray;
+
+public final class WallGrid implements Serializable {
+	
+	public static final long serialVersionUID = 6182736493047518820L;
+	
+	// (not final so that readObject can fill them in)
+	private int[] sideLengths;
+	private int dimensionCount;
+	
+	// Cells are indexed within a grid that is padded by one cell on every
+	// side, so the cells just outside the maze (where the entrance and exit
+	// lead) have indices too, and every neighbor of a cell inside the maze is
+	// a valid index. Indices are longs, so a maze may have more than 2^31
+	// cells. These are worked out from the side lengths again on reading.
+	private transient int[] paddedSideLengths;
+	private transient long[] strides;
+	private transient long indexCount;
+	private transient long cellCount;
+	
+	// One bit per wall: bit (index * dimensionCount + d) is the wall between
+	// the cell at index and its neighbor in the +d direction. Neighboring
+	// cells share the same bit, so the two sides of a wall can never disagree.
+	private BitStorage wallBits;
+	
+	private transient int modificationCount;
+	
+	public WallGrid(int[] sideLengths, boolean placeInitialWalls) {
+		if (sideLengths == null) throw new NullPointerException();
+		if (sideLengths.length == 0) throw new IllegalArgumentException();
+		
+		this.sideLengths = Arrays.copyOf(sideLengths, sideLengths.length);
+		this.dimensionCount = sideLengths.length;
+		
+		initializeShape();
+		this.wallBits = new ChunkedBitArray(indexCount * dimensionCount);
+		if (placeInitialWalls) {
+			wallBits.fill(true);
+		}
+	}
+	// Walls kept in the given storage (see MazeFile), one bit per wall as
+	// described above, which is used as it is
+	public WallGrid(int[] sideLengths, BitStorage wallBits) {
+		if (sideLengths == null || wallBits == null) throw new NullPointerException();
+		if (sideLengths.length == 0) throw new IllegalArgumentException();
+		
+		this.sideLengths = Arrays.copyOf(sideLengths, sideLengths.length);
+		this.dimensionCount = sideLengths.length;
+		
+		initializeShape();
+		if (wallBits.getLength() != indexCount * dimensionCount) throw new IllegalArgumentException();
+		this.wallBits = wallBits;
+	}
+	private void initializeShape() {
+		this.paddedSideLengths = new int[dimensionCount];
+		this.strides = new long[dimensionCount];
+		this.indexCount = 1;
+		this.cellCount = 1;
+		for (int d=0; d<dimensionCount; d++) {
+			if (sideLengths[d] < 1 || sideLengths[d] > Integer.MAX_VALUE - 2) throw new IllegalArgumentException();
+			paddedSideLengths[d] = sideLengths[d] + 2;
+			strides[d] = indexCount;
+			// Keep the wall bits within a long
+			if (indexCount > Long.MAX_VALUE / paddedSideLengths[d] / dimensionCount) throw new IllegalArgumentException();
+			indexCount *= paddedSideLengths[d];
+			cellCount *= sideLengths[d];
+		}
+	}
+	
+	public static WallGrid fromCellWalls(MultiDimensionalArray<CellWalls> maze) {
+		if (maze == null) throw new NullPointerException();
+		WallGrid grid = new WallGrid(maze.getSideLengths(), true);
+		LongCellSpliterator cells = grid.getInteriorCells();
+		int[] cell = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> {
+			CellWalls cellWalls = maze.get(cell);
+			for (int d=0; d<grid.dimensionCount; d++) {
+				// Each shared wall is read from the cell on its negative side;
+				// a cell's negative walls are only read on the outer faces.
+				grid.setWall(index, d, true, cellWalls.getWall(new Direction(d, true)));
+				if (cell[d] == 0) {
+					grid.setWall(index, d, false, cellWalls.getWall(new Direction(d, false)));
+				}
+			}
+		});
+		return grid;
+	}
+	
+	public int getDimensionCount() {
+		return dimensionCount;
+	}
+	public int getSideLength(int dimension) {
+		return sideLengths[dimension];
+	}
+	public int[] getSideLengths() {
+		return Arrays.copyOf(sideLengths, dimensionCount);
+	}
+	public int[] getPaddedSideLengths() {
+		return Arrays.copyOf(paddedSideLengths, dimensionCount);
+	}
+	// Number of cells inside the maze
+	public long getCellCount() {
+		return cellCount;
+	}
+	// Number of valid indices, including the padding around the maze
+	public long getIndexCount() {
+		return indexCount;
+	}
+	// Difference between the indices of neighboring cells along a dimension
+	public long getStride(int dimension) {
+		return strides[dimension];
+	}
+	public int getModificationCount() {
+		return modificationCount;
+	}
+	
+	// Accepts coordinates from -1 to sideLength inclusive.
+	public long getIndex(int[] cell) {
+		if (cell == null) throw new NullPointerException();
+		if (cell.length != dimensionCount) throw new IllegalArgumentException();
+		long index = 0;
+		for (int d=0; d<dimensionCount; d++) {
+			if (cell[d] < -1 || cell[d] > sideLengths[d]) throw new IndexOutOfBoundsException();
+			index += (cell[d] + 1) * strides[d];
+		}
+		return index;
+	}
+	public int[] getCoordinates(long index) {
+		return getCoordinates(index, new int[dimensionCount]);
+	}
+	public int[] getCoordinates(long index, int[] cell) {
+		if (index < 0 || index >= indexCount) throw new IndexOutOfBoundsException();
+		for (int d=0; d<dimensionCount; d++) {
+			cell[d] = (int) (index % paddedSideLengths[d]) - 1;
+			index /= paddedSideLengths[d];
+		}
+		return cell;
+	}
+	public boolean isInterior(long index) {
+		if (index < 0 || index >= indexCount) return false;
+		for (int d=0; d<dimensionCount; d++) {
+			long coordinate = index % paddedSideLengths[d];
+			if (coordinate == 0 || coordinate == paddedSideLengths[d] - 1) return false;
+			index /= paddedSideLengths[d];
+		}
+		return true;
+	}
+	// Lazy iteration over the indices of the cells inside the maze, of those
+	// that touch the outside of the maze, or of those on one of its faces.
+	// The coordinates that the spliterators keep are within the maze (from 0
+	// to sideLength - 1).
+	public LongCellSpliterator getInteriorCells() {
+		return LongCellSpliterator.interior(sideLengths, strides, getIndexOffset());
+	}
+	public LongCellSpliterator getBorderCells() {
+		return LongCellSpliterator.border(sideLengths, strides, getIndexOffset());
+	}
+	public LongCellSpliterator getFaceCells(Direction face) {
+		return LongCellSpliterator.face(sideLengths, face, strides, getIndexOffset());
+	}
+	// Index of the cell at the origin
+	private long getIndexOffset() {
+		long offset = 0;
+		for (int d=0; d<dimensionCount; d++) {
+			offset += strides[d];
+		}
+		return offset;
+	}
+	// True for interior cells that touch the outside of the maze
+	public boolean isInsideBorder(long index) {
+		if (!isInterior(index)) return false;
+		for (int d=0; d<dimensionCount; d++) {
+			long coordinate = index % paddedSideLengths[d];
+			if (coordinate == 1 || coordinate == paddedSideLengths[d] - 2) return true;
+			index /= paddedSideLengths[d];
+		}
+		return false;
+	}
+	
+	private long getBit(long index, int dimension, boolean isPositive) {
+		if (index < 0 || index >= indexCount) throw new IndexOutOfBoundsException();
+		if (dimension < 0 || dimension >= dimensionCount) throw new IndexOutOfBoundsException();
+		if (!isPositive) {
+			index -= strides[dimension];
+			if (index < 0) throw new IndexOutOfBoundsException();
+		}
+		return index * dimensionCount + dimension;
+	}
+	public boolean getWall(long index, int dimension, boolean isPositive) {
+		return wallBits.get(getBit(index, dimension, isPositive));
+	}
+	public void setWall(long index, int dimension, boolean isPositive, boolean isWall) {
+		wallBits.set(getBit(index, dimension, isPositive), isWall);
+		modificationCount += 1;
+	}
+	public boolean getWall(long index, Direction side) {
+		return getWall(index, side.getDimension(), side.isPositive());
+	}
+	public void setWall(long index, Direction side, boolean isWall) {
+		setWall(index, side.getDimension(), side.isPositive(), isWall);
+	}
+	public boolean getWall(int[] cell, Direction side) {
+		return getWall(getIndex(cell), side);
+	}
+	public void setWall(int[] cell, Direction side, boolean isWall) {
+		setWall(getIndex(cell), side, isWall);
+	}
+	
+	// Compatibility views for code written against CellWalls. These are
+	// copies, so changes to them are not written back to the grid.
+	public CellWalls getCellWalls(int[] cell) {
+		long index = getIndex(cell);
+		CellWalls cellWalls = new CellWalls(dimensionCount, false);
+		for (int d=0; d<dimensionCount; d++) {
+			cellWalls.setWall(new Direction(d, false), getWall(index, d, false));
+			cellWalls.setWall(new Direction(d, true), getWall(index, d, true));
+		}
+		return cellWalls;
+	}
+	public MultiDimensionalArray<CellWalls> toCellWallsArray() {
+		MultiDimensionalArray<CellWalls> maze = new MultiDimensionalArray<>(getSideLengths());
+		LongCellSpliterator cells = getInteriorCells();
+		int[] cell = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> maze.set(cell, getCellWalls(cell)));
+		return maze;
+	}
+	
+	@Override public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(sideLengths);
+		result = prime * result + wallBits.hashCode();
+		return result;
+	}
+	@Override public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		WallGrid other = (WallGrid) obj;
+		if (!Arrays.equals(sideLengths, other.sideLengths))
+			return false;
+		if (!wallBits.equals(other.wallBits))
+			return false;
+		return true;
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		sideLengths = (int[]) fields.get("sideLengths", null);
+		dimensionCount = fields.get("dimensionCount", 0);
+		initializeShape();
+		wallBits = (BitStorage) fields.get("wallBits", null);
+	}
+	
+}
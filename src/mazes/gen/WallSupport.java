@@ -0,0 +1,221 @@
+package mazes.gen;
+
+// Tetris pieces in 3D mazes, as the schematic generator builds them, worked
+// out directly from the walls.
+//
+// Only the walls between two cells of the maze become tetris pieces; the
+// outer faces become side pieces. Within the plane of a wall, a vertical run
+// of wall segments always stays in one piece, and runs whose bottoms are at
+// the same height and next to each other join the same piece. Pieces in the
+// YZ planes are then split between two of their runs wherever, at a height
+// that both runs reach, the two walls crossing them belong to one piece in
+// an XZ plane.
+//
+// A piece's faces are the bottoms and tops of its runs. It needs at least
+// one supported bottom face, one supported top face, and half of its faces
+// supported, where a face is supported if a layer piece (the floor or
+// ceiling of either cell beside the wall) meets it.
+public final class WallSupport {
+	
+	private WallSupport() {}
+	
+	// The wall is the one on the positive side of the cell at index, in the
+	// given dimension (0 or 1). Returns true if that wall is part of a tetris
+	// piece without enough support.
+	public static boolean isUnsupported(WallGrid walls, int dimension, long index) {
+		if (walls.getDimensionCount() != 3 || dimension < 0 || dimension > 1) throw new IllegalArgumentException();
+		if (!isTetrisWall(walls, dimension, index)) return false;
+		
+		long zStride = walls.getStride(2);
+		long parallelStride = walls.getStride(1 - dimension);
+		long run = getFirstRun(walls, dimension, index);
+		int faces = 0, supportedBottoms = 0, supportedTops = 0;
+		while (true) {
+			long top = run;
+			while (isTetrisWall(walls, dimension, top + zStride)) {
+				top += zStride;
+			}
+			faces += 2;
+			if (isSupported(walls, dimension, run, false)) supportedBottoms += 1;
+			if (isSupported(walls, dimension, top, true)) supportedTops += 1;
+			if (!isJoined(walls, dimension, run)) break;
+			run += parallelStride;
+		}
+		return supportedBottoms == 0 || supportedTops == 0 || (supportedBottoms + supportedTops) * 2 < faces;
+	}
+	// True if the wall is the bottom of the first run of its piece, so that
+	// each piece can be visited once.
+	public static boolean isFirstRun(WallGrid walls, int dimension, long index) {
+		if (walls.getDimensionCount() != 3 || dimension < 0 || dimension > 1) throw new IllegalArgumentException();
+		return isRunBottom(walls, dimension, index) && !isJoined(walls, dimension, index - walls.getStride(1 - dimension));
+	}
+	
+	// The edge is the one on the positive x and y sides of the cell at index.
+	// The central column there is filled from the bottom up, each stretch by
+	// a tetris piece that touches the edge all along it, starting at the
+	// piece's bottom height; a piece with walls on both sides of the edge must
+	// fill it at that height. Returns true if, choosing the way
+	// generateSchematics does, some height is left unfilled. Ties between
+	// pieces may be broken differently, so this is an estimate.
+	public static boolean isUnfilledEdge(WallGrid walls, long index) {
+		if (walls.getDimensionCount() != 3) throw new IllegalArgumentException();
+		if (!walls.isInterior(index)) return false;
+		for (int d=0; d<2; d++) {
+			// Cells on the far side of the maze have no such edge
+			if (getCoordinate(walls, index, d) == walls.getSideLength(d) - 1) return false;
+		}
+		long zStride = walls.getStride(2);
+		int zLength = walls.getSideLength(2);
+		long bottom = index - getCoordinate(walls, index, 2) * zStride;
+		// The walls in the XZ plane and then the YZ plane that touch the edge
+		long[] touching = {bottom, bottom + walls.getStride(0), bottom, bottom + walls.getStride(1)};
+		long currentPiece = -1;
+		int remaining = 0;
+		for (int z=0; z<zLength; z++) {
+			long chosenPiece = -1;
+			int chosenReach = Integer.MIN_VALUE;
+			boolean forced = false;
+			for (int i=0; i<touching.length; i+=2) {
+				int dimension = i == 0 ? 1 : 0;
+				long first = getPiece(walls, dimension, touching[i] + z * zStride);
+				long second = getPiece(walls, dimension, touching[i + 1] + z * zStride);
+				if (first != -1 && first == second) {
+					forced = true;
+					chosenPiece = first;
+					chosenReach = first == currentPiece ? remaining : getReach(walls, touching, first, z);
+					break;
+				}
+				for (long piece : new long[] {first, second}) {
+					if (piece == -1) continue;
+					int reach = getReach(walls, touching, piece, z);
+					if (reach > chosenReach) {
+						chosenPiece = piece;
+						chosenReach = reach;
+					}
+				}
+			}
+			if (forced || chosenReach > remaining) {
+				currentPiece = chosenPiece;
+				remaining = chosenReach;
+			}
+			if (remaining == 0) return true;
+			remaining -= 1;
+		}
+		return false;
+	}
+	// The floor is the ceiling of the cell at index. In the layer pieces
+	// between two layers of cells, floors are joined to each other across
+	// the walls between them, unless the wall continues through the layer
+	// (and so is cut out of it), but not across corners. Returns true if the
+	// floor is part of a section of its layer that doesn't reach the outside
+	// of the maze. This doesn't model the top and bottom layers, and is an
+	// estimate.
+	public static boolean isIslandedFloor(WallGrid walls, long index) {
+		if (walls.getDimensionCount() != 3) throw new IllegalArgumentException();
+		if (!walls.isInterior(index) || getCoordinate(walls, index, 2) == walls.getSideLength(2) - 1) return false;
+		if (!walls.getWall(index, 2, true)) return false;
+		int xLength = walls.getSideLength(0), yLength = walls.getSideLength(1);
+		long zStride = walls.getStride(2);
+		long[] strides = {walls.getStride(0), walls.getStride(1)};
+		// Floors are identified by the index of the cell below, and marked
+		// visited by its position within its layer
+		boolean[] visited = new boolean[(int) zStride];
+		long[] stack = new long[xLength * yLength];
+		int stackSize = 0;
+		stack[stackSize++] = index;
+		visited[(int) (index % zStride)] = true;
+		while (stackSize > 0) {
+			long cell = stack[--stackSize];
+			for (int d=0; d<2; d++) {
+				int coordinate = getCoordinate(walls, cell, d);
+				if (coordinate == 0 || coordinate == walls.getSideLength(d) - 1) return false;
+				for (long neighbor : new long[] {cell - strides[d], cell + strides[d]}) {
+					long wall = Math.min(cell, neighbor);
+					if (visited[(int) (neighbor % zStride)] || !walls.getWall(neighbor, 2, true)) continue;
+					if (walls.getWall(wall, d, true) && walls.getWall(wall + zStride, d, true)) continue;
+					visited[(int) (neighbor % zStride)] = true;
+					stack[stackSize++] = neighbor;
+				}
+			}
+		}
+		return true;
+	}
+	// Identifies the piece of a wall by its dimension and the bottom of its
+	// first run, or returns -1 if there is no wall
+	private static long getPiece(WallGrid walls, int dimension, long index) {
+		if (!isTetrisWall(walls, dimension, index)) return -1;
+		return getFirstRun(walls, dimension, index) * 2 + dimension;
+	}
+	// Number of heights from z up that the piece could fill, or -1 if z is
+	// not the piece's bottom height
+	private static int getReach(WallGrid walls, long[] touching, long piece, int z) {
+		int dimension = (int) (piece & 1);
+		int first = dimension == 1 ? 0 : 2;
+		if (getCoordinate(walls, piece >> 1, 2) != z) return -1;
+		long zStride = walls.getStride(2);
+		int reach = 0;
+		for (int level=z; level<walls.getSideLength(2); level++, reach++) {
+			if (getPiece(walls, dimension, touching[first] + level * zStride) != piece
+					&& getPiece(walls, dimension, touching[first + 1] + level * zStride) != piece) {
+				break;
+			}
+		}
+		return reach;
+	}
+	
+	private static long getFirstRun(WallGrid walls, int dimension, long index) {
+		long zStride = walls.getStride(2);
+		while (isTetrisWall(walls, dimension, index - zStride)) {
+			index -= zStride;
+		}
+		long parallelStride = walls.getStride(1 - dimension);
+		while (isJoined(walls, dimension, index - parallelStride)) {
+			index -= parallelStride;
+		}
+		return index;
+	}
+	// True if the runs starting at index and at the next position along the
+	// plane belong to the same piece
+	private static boolean isJoined(WallGrid walls, int dimension, long index) {
+		long parallelStride = walls.getStride(1 - dimension);
+		if (!isRunBottom(walls, dimension, index) || !isRunBottom(walls, dimension, index + parallelStride)) return false;
+		if (dimension == 1) return true;
+		// A YZ piece is split here if an XZ piece crosses both runs
+		long zStride = walls.getStride(2);
+		long xStride = walls.getStride(0);
+		for (long z=index, next=index+parallelStride;
+				isTetrisWall(walls, 0, z) && isTetrisWall(walls, 0, next);
+				z+=zStride, next+=zStride) {
+			if (isTetrisWall(walls, 1, z) && isTetrisWall(walls, 1, z + xStride)
+					&& getRunBottom(walls, 1, z) == getRunBottom(walls, 1, z + xStride) - xStride) {
+				return false;
+			}
+		}
+		return true;
+	}
+	private static long getRunBottom(WallGrid walls, int dimension, long index) {
+		long zStride = walls.getStride(2);
+		while (isTetrisWall(walls, dimension, index - zStride)) {
+			index -= zStride;
+		}
+		return index;
+	}
+	private static boolean isRunBottom(WallGrid walls, int dimension, long index) {
+		return isTetrisWall(walls, dimension, index) && !isTetrisWall(walls, dimension, index - walls.getStride(2));
+	}
+	// True if there is a wall between two cells of the maze on the positive
+	// side of the cell at index
+	private static boolean isTetrisWall(WallGrid walls, int dimension, long index) {
+		return walls.isInterior(index)
+				&& getCoordinate(walls, index, dimension) != walls.getSideLength(dimension) - 1
+				&& walls.getWall(index, dimension, true);
+	}
+	private static boolean isSupported(WallGrid walls, int dimension, long index, boolean isTop) {
+		return walls.getWall(index, 2, isTop) || walls.getWall(index + walls.getStride(dimension), 2, isTop);
+	}
+	// Coordinate of an index within the maze (from -1 to sideLength)
+	private static int getCoordinate(WallGrid walls, long index, int dimension) {
+		return (int) (index / walls.getStride(dimension) % (walls.getSideLength(dimension) + 2)) - 1;
+	}
+	
+}
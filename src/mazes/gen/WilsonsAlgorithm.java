@@ -0,0 +1,117 @@
+package mazes.gen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mazes.util.BitStorage;
+import mazes.util.ChunkedBitArray;
+import mazes.util.LongCellSpliterator;
+
+// Wilson's algorithm, which carves a uniform spanning tree: every perfect
+// maze on the grid is equally likely, which no setting of the growing tree's
+// randomness gives. Starting from a tree of one cell, a random walk is taken
+// from each cell not yet in the tree until it reaches the tree, erasing
+// loops as the walk crosses itself, and the walk's path is carved into the
+// tree.
+//
+// The walk is kept as an array of cell indices, with a bitset marking the
+// cells on it, so a loop is erased by popping cells back to where the walk
+// crossed itself. The tree is another bitset. Nothing is allocated per cell
+// or per step.
+public final class WilsonsAlgorithm {
+	
+	private final WallGrid walls;
+	private final int dimensionCount;
+	private final int[] sideLengths;
+	private final long[] strides;
+	private final Random random;
+	private final BitStorage inTree;
+	private final BitStorage onPath;
+	private long[] path = new long[64];
+	private int pathLength;
+	// Coordinates of the end of the walk
+	private final int[] cell;
+	
+	private WilsonsAlgorithm(WallGrid walls, Random random) {
+		this.walls = walls;
+		this.dimensionCount = walls.getDimensionCount();
+		this.sideLengths = walls.getSideLengths();
+		this.strides = new long[dimensionCount];
+		for (int d=0; d<dimensionCount; d++) {
+			strides[d] = walls.getStride(d);
+		}
+		this.random = random;
+		this.inTree = new ChunkedBitArray(walls.getIndexCount());
+		this.onPath = new ChunkedBitArray(walls.getIndexCount());
+		this.cell = new int[dimensionCount];
+	}
+	
+	// Removes walls from a grid with every wall in place until it is a
+	// perfect maze, growing the tree from the given cell
+	public static void carve(WallGrid walls, long root, Random random) {
+		WilsonsAlgorithm wilson = new WilsonsAlgorithm(walls, random);
+		wilson.inTree.set(root, true);
+		LongCellSpliterator cells = walls.getInteriorCells();
+		int[] start = cells.getCoordinates();
+		cells.forEachRemaining((long index) -> {
+			if (!wilson.inTree.get(index)) {
+				wilson.walkFrom(index, start);
+			}
+		});
+	}
+	
+	private void walkFrom(long start, int[] startCell) {
+		System.arraycopy(startCell, 0, cell, 0, dimensionCount);
+		pathLength = 0;
+		push(start);
+		onPath.set(start, true);
+		long current = start;
+		while (true) {
+			// Directions leading out of the grid are drawn again, so each
+			// neighbor is equally likely
+			int direction = random.nextInt(dimensionCount * 2);
+			int dimension = direction >> 1;
+			boolean isPositive = (direction & 1) != 0;
+			if (isPositive ? cell[dimension] == sideLengths[dimension] - 1 : cell[dimension] == 0) continue;
+			cell[dimension] += isPositive ? 1 : -1;
+			current += isPositive ? strides[dimension] : -strides[dimension];
+			if (inTree.get(current)) {
+				push(current);
+				break;
+			}
+			if (onPath.get(current)) {
+				// Erase the loop back to where the walk crossed itself
+				while (path[pathLength - 1] != current) {
+					onPath.set(path[--pathLength], false);
+				}
+				walls.getCoordinates(current, cell);
+			}
+			else {
+				push(current);
+				onPath.set(current, true);
+			}
+		}
+		// Carve the path into the tree; its last cell is already in it
+		for (int i=0; i<pathLength-1; i++) {
+			long from = path[i];
+			long to = path[i + 1];
+			onPath.set(from, false);
+			inTree.set(from, true);
+			for (int d=0; d<dimensionCount; d++) {
+				if (to - from == strides[d]) {
+					walls.setWall(from, d, true, false);
+				}
+				else if (from - to == strides[d]) {
+					walls.setWall(to, d, true, false);
+				}
+			}
+		}
+	}
+	private void push(long index) {
+		if (pathLength == path.length) {
+			path = Arrays.copyOf(path, pathLength * 2);
+		}
+		path[pathLength++] = index;
+	}
+	
+}
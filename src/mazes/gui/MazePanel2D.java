@@ -6,6 +6,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.swing.AbstractAction;
@@ -15,6 +16,9 @@ import javax.swing.Timer;
 
 import mazes.gen.CellWalls;
 import mazes.gen.GrowingTreeMazeGenerator;
+import mazes.gen.MazeSolver;
+import mazes.gen.WallGrid;
+import mazes.util.BitMultiDimensionalArray;
 import mazes.util.Direction;
 import mazes.util.MultiDimensionalArray;
 
@@ -28,6 +32,9 @@ public final class MazePanel2D extends JPanel {
 	private boolean hasStartedAnimation = false;
 	private final long seed = System.currentTimeMillis();
 	
+	// Indexed by flat index, for the cells on the solution
+	private BitSet solution;
+	
 	public MazePanel2D(int windowSize, int sideLength) {
 		super();
 		setPreferredSize(new Dimension(windowSize + 2, windowSize + 2));
@@ -65,17 +72,43 @@ public final class MazePanel2D extends JPanel {
 			}
 		});
 		
+		// Press C to toggle display of solution.
+		getInputMap().put(KeyStroke.getKeyStroke("C"), "C");
+		getActionMap().put("C", new AbstractAction() {
+			@Override public void actionPerformed(ActionEvent ae) {
+				if (gen.getExit() == null) {
+					System.out.println("Maze generation is not complete. Solution cannot be displayed.");
+				}
+				else if (solution == null) {
+					// Breadth-first search from both ends (see MazeSolver)
+					MultiDimensionalArray<CellWalls> maze = gen.getMaze();
+					WallGrid walls = gen.getWalls();
+					int[] path = new MazeSolver(walls).findPathBidirectional(gen.getEntrance(), gen.getExit());
+					solution = new BitSet();
+					int[] position = new int[2];
+					for (int cell : path) {
+						solution.set(maze.indexOf(walls.getCoordinates(cell, position)));
+					}
+					System.out.println("Solution is now displayed.");
+				}
+				else {
+					solution = null;
+					System.out.println("Solution is no longer displayed.");
+				}
+				repaint();
+			}
+		});
+		
 		resetMazeGen();
 		System.out.print("Generating " + (sideLength + "x" + sideLength) + " maze... ");
-		while (!gen.isFinished()) {
-			gen.performIteration();
-		}
+		gen.generate();
 		System.out.println("Done.");
 		repaint();
 	}
 	
 	public void resetMazeGen() {
 		gen = GrowingTreeMazeGenerator.generate2DMaze(sideLength, 0.5f, seed);
+		solution = null;
 	}
 	
 	@Override public void paintComponent(Graphics G) {
@@ -87,7 +120,7 @@ public final class MazePanel2D extends JPanel {
 		
 		MultiDimensionalArray<CellWalls> maze = gen.getMaze();
 		List<int[]> potentialCells = gen.getPotentialCells();
-		MultiDimensionalArray<Boolean> alreadyVisited = gen.getAlreadyVisited();
+		BitMultiDimensionalArray alreadyVisited = gen.getAlreadyVisited();
 		int[] entrance = gen.getEntrance();
 		int[] exit = gen.getExit();
 		
@@ -145,6 +178,11 @@ public final class MazePanel2D extends JPanel {
 					g.fillRect((int)(x * xTransform) + 1, (int)(y * yTransform) + 1,
 							(int) xTransform, (int) yTransform);
 				}
+				if (solution != null && solution.get(maze.indexOf(coord))) {
+					g.setColor(Color.YELLOW);
+					g.fillRect((int)(x * xTransform) + 1, (int)(y * yTransform) + 1,
+							(int) xTransform - 1, (int) yTransform - 1);
+				}
 				// Background fill is white, so we don't have to do anything here
 			}
 		}
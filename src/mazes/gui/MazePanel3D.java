@@ -7,11 +7,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Deque;
+import java.util.BitSet;
 import java.util.Random;
 import java.util.function.Consumer;
 
@@ -22,11 +18,11 @@ import javax.swing.Timer;
 
 import mazes.gen.CellWalls;
 import mazes.gen.GrowingTreeMazeGenerator;
+import mazes.gen.MazeSolver;
+import mazes.gen.WallGrid;
 import mazes.util.Direction;
 import mazes.util.MazeIO;
 import mazes.util.MultiDimensionalArray;
-import util.ArrObjPair;
-import util.ArrayUtil;
 
 @SuppressWarnings("serial")
 public final class MazePanel3D extends JPanel {
@@ -43,7 +39,9 @@ public final class MazePanel3D extends JPanel {
 	private GrowingTreeMazeGenerator gen;
 	private long seed;
 	
-	private Collection<ArrObjPair<Integer, Direction>> solution;
+	// Indexed by flat index * 6 + Direction.getIndex(), for the walls the
+	// solution passes through
+	private BitSet solution;
 	
 	public MazePanel3D(byte mazeSize, int gridSize, int layerOffsetX, int layerOffsetY, int windowBuffer, int lineWidth) {
 		this(System.currentTimeMillis(), mazeSize, gridSize, layerOffsetX, layerOffsetY, windowBuffer, lineWidth);
@@ -85,9 +83,7 @@ public final class MazePanel3D extends JPanel {
 		};
 		AbstractAction finishMazeGeneration = new AbstractAction() {
 			@Override public void actionPerformed(ActionEvent ae) {
-				while (!gen.isFinished()) {
-					gen.performIteration();
-				}
+				gen.generate();
 				System.out.println("Finalized maze generator state.");
 				repaint();
 			}
@@ -157,7 +153,7 @@ public final class MazePanel3D extends JPanel {
 						seed = gen.getSeed().getSeed();
 					}
 					catch (NullPointerException e) {
-						System.out.println("Sorry, this maze appears to be in an old format. Can't retrieve the seed.");
+						System.out.println("Sorry, this maze doesn't record its seed. Can't retrieve the seed.");
 					}
 					System.out.println("Loaded maze.");
 					repaint();
@@ -211,9 +207,7 @@ public final class MazePanel3D extends JPanel {
 			@Override public void actionPerformed(ActionEvent ae) {
 				MazePanel3D.this.seed = (int) System.currentTimeMillis();
 				resetMazeGeneration.actionPerformed(null);
-				while (!gen.isFinished()) {
-					gen.performIteration();
-				}
+				gen.generate();
 				System.out.println("Generated random maze.");
 				repaint();
 			}
@@ -227,60 +221,19 @@ public final class MazePanel3D extends JPanel {
 					System.out.println("Maze generation is not complete. Solution cannot be displayed.");
 				}
 				else if (solution == null) {
-					Integer[] entrance = ArrayUtil.box(gen.getEntrance());
-					Integer[] exit = ArrayUtil.box(gen.getExit());
+					// Breadth-first search from both ends along the open walls
+					// (see MazeSolver). Each step marks the wall it passes
+					// through, from both sides, by flat index and direction.
 					MultiDimensionalArray<CellWalls> maze = gen.getMaze();
-					Deque<ArrObjPair<Integer, Integer>> stack = new ArrayDeque<>();
-					stack.addLast(new ArrObjPair<>(entrance, 0));
-					while (true) {
-//						System.out.println(stack);
-						ArrObjPair<Integer, Integer> pair = stack.removeLast();
-						Integer[] position = pair.getFirst();
-						int index = pair.getSecond();
-						Direction dir = new Direction(index);
-						// If we've reached the exit, yay!
-						if (Arrays.equals(position, exit)) {
-//							System.out.println("Reached exit.");
-							break;
-						}
-						// If we're out of bounds, backtrack.
-						if (!maze.isValidIndex(ArrayUtil.unbox(position))) {
-//							System.out.println("Out of bounds. Backtracking.");
-							continue;
-						}
-						// If we've looked at all the directions, backtrack.
-						if (index >= 6) {
-//							System.out.println("All directions examined. Backtracking.");
-							continue;
-						}
-						// If we're looking backwards, just look at the next direction.
-						if (!stack.isEmpty() && Arrays.equals(stack.getLast().getFirst(), dir.getIncrement(position))) {
-//							System.out.println("Looking backwards. Checking next direction.");
-							stack.addLast(new ArrObjPair<>(position, index + 1));
-							continue;
-						}
-						// If we can advance onwards, do so. If we backtrack to here,
-						// look at the next direction.
-						if (!maze.get(ArrayUtil.unbox(position)).getWall(dir)) {
-//							System.out.println("Found opening. Proceeding.");
-							stack.addLast(new ArrObjPair<>(position, index + 1));
-							stack.addLast(new ArrObjPair<>(dir.getIncrement(position), 0));
-							continue;
-						}
-						// Otherwise, just look at the next direction.
-						else {
-//							System.out.println("Found wall. Checking next direction.");
-							stack.addLast(new ArrObjPair<>(position, index + 1));
-							continue;
-						}
-					}
-					solution = new ArrayList<>();
-					for (ArrObjPair<Integer, Integer> pair : stack) {
-						Integer[] pos = pair.getFirst();
-						int index = pair.getSecond();
-						Direction dir = new Direction(index - 1);
-						solution.add(new ArrObjPair<>(pos, dir));
-						solution.add(new ArrObjPair<>(dir.getIncrement(pos), dir.getOpposite()));
+					WallGrid walls = gen.getWalls();
+					MazeSolver solver = new MazeSolver(walls);
+					int[] path = solver.findPathBidirectional(gen.getEntrance(), gen.getExit());
+					int[] steps = solver.getSteps(path);
+					solution = new BitSet();
+					int[] position = new int[3];
+					for (int i=0; i<steps.length; i++) {
+						solution.set(maze.indexOf(walls.getCoordinates(path[i], position)) * 6 + steps[i]);
+						solution.set(maze.indexOf(walls.getCoordinates(path[i + 1], position)) * 6 + (steps[i] ^ 1));
 					}
 //					System.out.println("Computed solution:");
 //					System.out.println(solution);
@@ -306,7 +259,7 @@ public final class MazePanel3D extends JPanel {
 		
 		MultiDimensionalArray<CellWalls> maze = gen.getMaze();
 //		List<int[]> potentialCells = gen.getPotentialCells();
-//		MultiDimensionalArray<Boolean> alreadyVisited = gen.getAlreadyVisited();
+//		BitMultiDimensionalArray alreadyVisited = gen.getAlreadyVisited();
 		int[] entrance = gen.getEntrance();
 		int[] exit = gen.getExit();
 		
@@ -363,7 +316,7 @@ public final class MazePanel3D extends JPanel {
 							g.setColor(Color.GRAY);
 						}
 					}
-					if (solution != null && solution.contains(new ArrObjPair<>(ArrayUtil.box(coord), new Direction(d)))) {
+					if (solution != null && solution.get(maze.indexOf(coord) * 6 + d)) {
 						g.setColor(Color.BLACK);
 					}
 					// [x/y/z]p represents the rendering position. [x/y/z] represents the actual position.
@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
+import java.util.BitSet;
 
 import javax.swing.AbstractAction;
 import javax.swing.JPanel;
@@ -14,6 +15,8 @@ import javax.swing.Timer;
 
 import mazes.gen.CellWalls;
 import mazes.gen.GrowingTreeMazeGenerator;
+import mazes.gen.MazeSolver;
+import mazes.gen.WallGrid;
 import mazes.util.Direction;
 import mazes.util.MultiDimensionalArray;
 
@@ -33,6 +36,9 @@ public final class MazePanel4D extends JPanel {
 	private boolean hasStartedAnimation = false;
 	private final long seed = System.currentTimeMillis();
 	
+	// Indexed by flat index, for the cells on the solution
+	private BitSet solution;
+	
 	public MazePanel4D(int gridSize, int layerOffsetX, int layerOffsetY, int metalayerOffsetX, int metalayerOffsetY, int mazeSize, int windowBuffer, int lineWidth) {
 		super();
 		this.gridSize = gridSize;
@@ -78,17 +84,43 @@ public final class MazePanel4D extends JPanel {
 			}
 		});
 		
+		// Press C to toggle display of solution.
+		getInputMap().put(KeyStroke.getKeyStroke("C"), "C");
+		getActionMap().put("C", new AbstractAction() {
+			@Override public void actionPerformed(ActionEvent ae) {
+				if (gen.getExit() == null) {
+					System.out.println("Maze generation is not complete. Solution cannot be displayed.");
+				}
+				else if (solution == null) {
+					// Breadth-first search from both ends (see MazeSolver)
+					MultiDimensionalArray<CellWalls> maze = gen.getMaze();
+					WallGrid walls = gen.getWalls();
+					int[] path = new MazeSolver(walls).findPathBidirectional(gen.getEntrance(), gen.getExit());
+					solution = new BitSet();
+					int[] position = new int[4];
+					for (int cell : path) {
+						solution.set(maze.indexOf(walls.getCoordinates(cell, position)));
+					}
+					System.out.println("Solution is now displayed.");
+				}
+				else {
+					solution = null;
+					System.out.println("Solution is no longer displayed.");
+				}
+				repaint();
+			}
+		});
+		
 		resetMazeGen();
 		System.out.print("Generating " + (mazeSize + "x" + mazeSize + "x" + mazeSize + "x" + mazeSize) + " maze... ");
-		while (!gen.isFinished()) {
-			gen.performIteration();
-		}
+		gen.generate();
 		System.out.println("Done.");
 		repaint();
 	}
 	
 	public void resetMazeGen() {
 		gen = GrowingTreeMazeGenerator.generate4DMaze(mazeSize, 0.5f, seed);
+		solution = null;
 	}
 	
 	@Override public void paintComponent(Graphics G) {
@@ -100,7 +132,7 @@ public final class MazePanel4D extends JPanel {
 		
 		MultiDimensionalArray<CellWalls> maze = gen.getMaze();
 //		List<int[]> potentialCells = gen.getPotentialCells();
-//		MultiDimensionalArray<Boolean> alreadyVisited = gen.getAlreadyVisited();
+//		BitMultiDimensionalArray alreadyVisited = gen.getAlreadyVisited();
 		int[] entrance = gen.getEntrance();
 		int[] exit = gen.getExit();
 		
@@ -152,6 +184,18 @@ public final class MazePanel4D extends JPanel {
 		}
 		
 		int x, y, z, w;
+		if (solution != null) {
+			g.setColor(Color.WHITE);
+			int[] coord = new int[4];
+			for (int cell=solution.nextSetBit(0); cell>=0; cell=solution.nextSetBit(cell+1)) {
+				maze.getIndices(cell, coord);
+				x = coord[0]; y = coord[1]; z = coord[2]; w = coord[3];
+				g.fillOval(
+						x * gridSize + z * layerOffsetX + w * metalayerOffsetX + windowBuffer / 2,
+						y * gridSize + z * layerOffsetY + w * metalayerOffsetY + windowBuffer / 2,
+						ovalSize, ovalSize);
+			}
+		}
 		g.setColor(Color.BLACK);
 		x = entrance[0]; y = entrance[1]; z = entrance[2]; w = entrance[3];
 		g.fillOval(
@@ -0,0 +1,28 @@
+package mazes.schematic;
+
+// The reasons a candidate maze can be rejected. These are expected results of
+// the search, not errors, so they are counted rather than traced.
+public enum Rejection {
+	
+	UNSUPPORTED_TETRIS_PIECE("one or more tetris pieces with insufficient layer piece support", false),
+	UNFILLED_CENTRAL_COLUMN("cannot fill central column", true),
+	ISLANDED_LAYER_PIECE_SECTION("islanded layer piece section", true);
+	
+	private final String description;
+	private final boolean displayMessage;
+	
+	private Rejection(String description, boolean displayMessage) {
+		this.description = description;
+		this.displayMessage = displayMessage;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	// Whether a rejection for this reason is worth reporting on its own, or
+	// only in the totals
+	public boolean displayMessage() {
+		return displayMessage;
+	}
+	
+}
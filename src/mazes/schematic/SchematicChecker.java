@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.TreeSet;
 
 import mazes.gen.CellWalls;
+import mazes.util.BitMultiDimensionalArray;
 import mazes.util.Direction;
 import mazes.util.MultiDimensionalArray;
 import mazes.util.VectorUtil;
@@ -215,19 +216,19 @@ public final class SchematicChecker {
 	}
 	private static void checkForIslandedLayerPieceSections(SchematicSet schematicSet, boolean overrideExceptions) throws SchematicException {
 		for (SchematicCellGrid schematic : schematicSet.layerSchematics) {
-			boolean[][] visited = new boolean[schematic.width][schematic.height]; // init to false
+			BitMultiDimensionalArray visited = new BitMultiDimensionalArray(new int[] {schematic.width, schematic.height}); // init to false
 			for (int X=0; X<schematic.width; X++) {
 				for (int Y=0; Y<schematic.height; Y++) {
 					if (X != 0 && Y != 0 && X != schematic.width - 1 && Y != schematic.height - 1) continue;
-					if (!visited[X][Y] && schematic.getCell(X, Y) == SchematicCell.SOLID) {
+					if (!visited.get(X + Y * schematic.width) && schematic.getCell(X, Y) == SchematicCell.SOLID) {
 						Deque<Coordinate> stack = new ArrayDeque<>();
 						stack.addLast(new Coordinate(X, Y));
 						while (stack.size() > 0) {
 							Coordinate coord = stack.removeLast();
 							int x = coord.x, y = coord.y;
 							if (x < 0 || x >= schematic.width || y < 0 || y >= schematic.height) continue;
-							if (!visited[x][y] && schematic.getCell(x, y) == SchematicCell.SOLID) {
-								visited[x][y] = true;
+							if (!visited.get(x + y * schematic.width) && schematic.getCell(x, y) == SchematicCell.SOLID) {
+								visited.set(x + y * schematic.width, true);
 								for (Direction d : Direction.getDirections(2)) {
 									int newX = coord.x + d.getOffset(0), newY = coord.y + d.getOffset(1);
 									stack.add(new Coordinate(newX, newY));
@@ -239,8 +240,8 @@ public final class SchematicChecker {
 			}
 			for (int x=0; x<schematic.width; x++) {
 				for (int y=0; y<schematic.height; y++) {
-					if (!visited[x][y] && schematic.getCell(x, y) == SchematicCell.SOLID) {
-						if (!overrideExceptions) throw new SchematicException("islanded layer piece section", true);
+					if (!visited.get(x + y * schematic.width) && schematic.getCell(x, y) == SchematicCell.SOLID) {
+						if (!overrideExceptions) throw new SchematicException(Rejection.ISLANDED_LAYER_PIECE_SECTION);
 					}
 				}
 			}
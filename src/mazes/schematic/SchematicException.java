@@ -3,14 +3,22 @@ package mazes.schematic;
 @SuppressWarnings("serial")
 public final class SchematicException extends Exception {
 	
-	private final boolean displayMessage;
+	private final Rejection rejection;
+	public Rejection getRejection() {
+		return rejection;
+	}
 	public boolean displayMessage() {
-		return displayMessage;
+		return rejection.displayMessage();
 	}
 	
-	public SchematicException(String message, boolean displayMessage) {
-		super(message);
-		this.displayMessage = displayMessage;
+	public SchematicException(Rejection rejection) {
+		this(rejection, rejection.getDescription());
+	}
+	// Thousands of these are thrown in a batch search, so no stack trace is
+	// recorded
+	public SchematicException(Rejection rejection, String message) {
+		super(message, null, false, false);
+		this.rejection = rejection;
 	}
 	
 }
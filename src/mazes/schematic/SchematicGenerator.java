@@ -2,34 +2,67 @@ package mazes.schematic;
 
 import java.text.SimpleDateFormat;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mazes.gen.CellWalls;
 import mazes.gen.GrowingTreeMazeGenerator;
+import mazes.gen.MazeStatistics;
+import mazes.gen.SeedStream;
+import mazes.util.ByteMultiDimensionalArray;
 import mazes.util.Direction;
 import mazes.util.MazeIO;
 import mazes.util.MultiDimensionalArray;
+import util.MathUtil;
 import util.Pair;
 import util.QuadConsumer;
 import util.StreamUtil;
-import util.Trilean;
 
 public final class SchematicGenerator {
 	
 	private SchematicGenerator() {}
 	
 	// command-line functionality
+	// Optional arguments, to reproduce, resume or split a batch:
+	// <batch seed (hex)> [<shard index> <shard count> [<first candidate>]]
+	// Shard k numbers its mazes from the starting number plus k times the
+	// number of mazes, so that the shards can save into one directory.
 	public static void main(String[] args) {
-		promptAndSaveMazes(SchematicGenerator::saveValidMazes);
+		byte algorithm = promptAlgorithm();
+		if (args.length == 0) {
+			promptAndSaveMazes((mazeSize, numberOfMazes, baseMazeName, startNum) -> {
+				saveValidMazes(mazeSize, numberOfMazes, baseMazeName, startNum, Runtime.getRuntime().availableProcessors(), algorithm);
+			});
+			return;
+		}
+		long batchSeed = MathUtil.parseLong(args[0], 16);
+		int shardIndex = args.length >= 3 ? Integer.parseInt(args[1]) : 0;
+		int shardCount = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
+		long firstCandidate = args.length >= 4 ? Long.parseLong(args[3]) : 0;
+		promptAndSaveMazes((mazeSize, numberOfMazes, baseMazeName, startNum) -> {
+			SeedStream seeds = new SeedStream(batchSeed, 0.5f, mazeSize, algorithm).shard(shardIndex, shardCount);
+			saveValidMazes(numberOfMazes, baseMazeName, startNum + shardIndex * numberOfMazes, seeds, firstCandidate, Runtime.getRuntime().availableProcessors());
+		});
+	}
+	// GROWING_TREE, or BUILDABLE_GROWING_TREE to steer generation away from
+	// mazes that can't be built (which changes every maze's seed string)
+	public static byte promptAlgorithm() {
+		System.out.print("Avoid mazes that can't be built (y/n): ");
+		return MazeIO.scanner.next().startsWith("y") ? GrowingTreeMazeGenerator.Seed.BUILDABLE_GROWING_TREE : GrowingTreeMazeGenerator.Seed.GROWING_TREE;
 	}
 	public static void promptAndSaveMazes(QuadConsumer<Byte, Integer, String, Integer> function) {
 		System.out.print("Enter maze size (e.g. 3..6): ");
@@ -44,52 +77,172 @@ public final class SchematicGenerator {
 	}
 	
 	// search for valid mazes
+	// Candidates are evaluated on all cores, but their results are taken in
+	// candidate order, so maze numbers are assigned in seed order no matter
+	// which thread finishes first. Seeds come from a SeedStream, so the same
+	// batch seed always yields the same mazes; the batch seed and candidate
+	// numbers are printed so that a batch can be rerun or resumed.
+	// Rejections are counted by reason, and a summary of the counts is
+	// printed every so often while the search runs.
+	private static final long progressIntervalNanos = 10_000_000_000L;
+	private static final class Candidate {
+		
+		public final long candidateNumber;
+		public final GrowingTreeMazeGenerator gen;
+		// null if the maze is valid
+		public final Rejection rejection;
+		public final String rejectionMessage;
+		public final Throwable error;
+		// Only for valid mazes
+		public final MazeStatistics mazeStatistics;
+		
+		public Candidate(long candidateNumber, GrowingTreeMazeGenerator gen, Rejection rejection, String rejectionMessage, Throwable error) {
+			this(candidateNumber, gen, rejection, rejectionMessage, error, null);
+		}
+		public Candidate(long candidateNumber, GrowingTreeMazeGenerator gen, Rejection rejection, String rejectionMessage, Throwable error, MazeStatistics mazeStatistics) {
+			this.candidateNumber = candidateNumber;
+			this.gen = gen;
+			this.rejection = rejection;
+			this.rejectionMessage = rejectionMessage;
+			this.error = error;
+			this.mazeStatistics = mazeStatistics;
+		}
+		
+	}
 	public static void saveValidMazes(byte mazeSize, int numberOfMazes, String baseMazeName, int startNum) {
+		saveValidMazes(mazeSize, numberOfMazes, baseMazeName, startNum, Runtime.getRuntime().availableProcessors());
+	}
+	public static void saveValidMazes(byte mazeSize, int numberOfMazes, String baseMazeName, int startNum, int threadCount) {
+		saveValidMazes(mazeSize, numberOfMazes, baseMazeName, startNum, threadCount, GrowingTreeMazeGenerator.Seed.GROWING_TREE);
+	}
+	public static void saveValidMazes(byte mazeSize, int numberOfMazes, String baseMazeName, int startNum, int threadCount, byte algorithm) {
+		SeedStream seeds = new SeedStream(new Random().nextLong(), 0.5f, mazeSize, algorithm);
+		saveValidMazes(numberOfMazes, baseMazeName, startNum, seeds, 0, threadCount);
+	}
+	// Tries the candidates of the stream in order, starting with its n-th
+	// candidate where n = firstCandidate
+	public static void saveValidMazes(int numberOfMazes, String baseMazeName, int startNum, SeedStream seeds, long firstCandidate, int threadCount) {
+		byte mazeSize = seeds.getSize();
 		if (mazeSize < 2) throw new IllegalArgumentException();
 		if (numberOfMazes < 1 || numberOfMazes > 1000) throw new IllegalArgumentException();
+		if (firstCandidate < 0) throw new IllegalArgumentException();
+		if (threadCount < 1) throw new IllegalArgumentException();
 		if (MazeIO.fileExists(String.format("%s%d_%03d.chmz", baseMazeName, mazeSize, startNum))) {
 			System.out.println("Please move, rename, or delete pre-existing maze files.");
 			System.exit(0);
 		}
-		System.out.printf("Attempting to generate %d valid mazes of size %d...%n", numberOfMazes, mazeSize);
+		System.out.printf("Attempting to generate %d valid mazes of size %d on %d threads...%n", numberOfMazes, mazeSize, threadCount);
+		System.out.printf("Seeds: %s, from candidate %d.%n", seeds, firstCandidate);
 		int mazesSaved = startNum;
 		int invalidMazesGenerated = 0;
-		Random random = new Random();
-		while (mazesSaved < numberOfMazes + startNum) {
-			GrowingTreeMazeGenerator gen = GrowingTreeMazeGenerator.generate3DMaze(new GrowingTreeMazeGenerator.Seed(random.nextLong(), 0.5f, mazeSize));
-			MultiDimensionalArray<CellWalls> maze = gen.getMaze();
-			
-			try {
-				PieceSet pieceSet = generatePieces(maze, false);
-				SchematicSet schematicSet = generateSchematics(maze.getSideLengths(), pieceSet, false);
-				SchematicChecker.checkSchematics(maze, schematicSet, false);
-				
-				if (!MazeIO.saveMaze(gen, String.format("%s%d_%03d.chmz", baseMazeName, mazeSize, mazesSaved), true)) {
-					String alternateName;
-					do {
-						System.out.print("Enter alternate filename (with extension): ");
-						alternateName = MazeIO.scanner.nextLine();
-					}
-					while (!MazeIO.saveMaze(gen, alternateName, true));
+		long nextCandidate = firstCandidate;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		// Bounded so that a slow candidate can't let the queue grow without limit
+		int maxPendingCandidates = threadCount * 4;
+		Deque<Future<Candidate>> pendingCandidates = new ArrayDeque<>();
+		ValidationStatistics statistics = new ValidationStatistics();
+		long nextProgressNanos = System.nanoTime() + progressIntervalNanos;
+		try {
+			while (mazesSaved < numberOfMazes + startNum) {
+				while (pendingCandidates.size() < maxPendingCandidates) {
+					long candidateNumber = nextCandidate++;
+					GrowingTreeMazeGenerator.Seed seed = seeds.getNthSeed(candidateNumber);
+					pendingCandidates.addLast(executor.submit(() -> evaluateCandidate(candidateNumber, seed, statistics)));
 				}
-				System.out.printf("Maze %03d saved successfully [%d attempts] [%s].%n", mazesSaved, invalidMazesGenerated, getTime());
-				invalidMazesGenerated = 0;
-				mazesSaved += 1;
-			}
-			catch (SchematicException e) {
-				if (e.displayMessage()) {
-					System.out.printf("Maze %03d schematic generation failed: %s [%d attempts] [%s].%n", mazesSaved, e.getMessage(), invalidMazesGenerated, getTime());
-					invalidMazesGenerated = 0;
+				Candidate candidate = takeCandidate(pendingCandidates.removeFirst());
+				GrowingTreeMazeGenerator gen = candidate.gen;
+				if (System.nanoTime() - nextProgressNanos >= 0) {
+					System.out.printf("[%s] %s.%n", getTime(), statistics.getSummary());
+					nextProgressNanos += progressIntervalNanos;
+				}
+				if (candidate.error != null) {
+					System.out.printf("Maze %03d schematic generation encountered unexpected error:%n", mazesSaved);
+					candidate.error.printStackTrace(System.out);
+					if (gen != null) saveInvalidMaze(gen, mazeSize);
+				}
+				else if (candidate.rejection != null) {
+					if (candidate.rejection.displayMessage()) {
+						System.out.printf("Maze %03d schematic generation failed: %s [%d attempts] [%s].%n", mazesSaved, candidate.rejectionMessage, invalidMazesGenerated, getTime());
+						invalidMazesGenerated = 0;
+					}
+					else {
+						invalidMazesGenerated += 1;
+					}
 				}
 				else {
-					invalidMazesGenerated += 1;
+					if (!MazeIO.saveMaze(gen, String.format("%s%d_%03d.chmz", baseMazeName, mazeSize, mazesSaved), true)) {
+						String alternateName;
+						do {
+							System.out.print("Enter alternate filename (with extension): ");
+							alternateName = MazeIO.scanner.nextLine();
+						}
+						while (!MazeIO.saveMaze(gen, alternateName, true));
+					}
+					System.out.printf("Maze %03d saved successfully [%d attempts] [candidate %d, seed %s] [%s].%n", mazesSaved, invalidMazesGenerated, candidate.candidateNumber, gen.getSeed().getSeedString(), getTime());
+					System.out.printf("Maze %03d: %s.%n", mazesSaved, candidate.mazeStatistics.getSummary());
+					invalidMazesGenerated = 0;
+					mazesSaved += 1;
 				}
 			}
-			catch (Throwable e) {
-				System.out.printf("Maze %03d schematic generation encountered unexpected error:%n", mazesSaved);
-				e.printStackTrace(System.out);
-				saveInvalidMaze(gen, mazeSize);
+		}
+		finally {
+			for (Future<Candidate> pendingCandidate : pendingCandidates) {
+				pendingCandidate.cancel(true);
 			}
+			executor.shutdownNow();
+		}
+		System.out.printf("Candidates rejected at each stage:%n%s", statistics);
+	}
+	// Runs the validation stages cheapest first, so most invalid mazes are
+	// rejected from their walls alone, before any pieces are generated. That
+	// stage returns its result; the later ones still throw, but rarely. Valid
+	// mazes are measured (see MazeStatistics) for the report when saved.
+	private static Candidate evaluateCandidate(long candidateNumber, GrowingTreeMazeGenerator.Seed seed, ValidationStatistics statistics) {
+		GrowingTreeMazeGenerator gen = null;
+		ValidationStage stage = null;
+		long stageStart = 0;
+		try {
+			gen = GrowingTreeMazeGenerator.generate3DMaze(seed);
+			stage = ValidationStage.WALLS;
+			stageStart = System.nanoTime();
+			Rejection rejection = WallChecker.checkWalls(gen.getWalls());
+			statistics.record(stage, rejection, System.nanoTime() - stageStart);
+			if (rejection != null) return new Candidate(candidateNumber, gen, rejection, rejection.getDescription(), null);
+			
+			MultiDimensionalArray<CellWalls> maze = gen.getMaze();
+			stage = ValidationStage.PIECES;
+			stageStart = System.nanoTime();
+			PieceSet pieceSet = generatePieces(maze, false);
+			statistics.record(stage, null, System.nanoTime() - stageStart);
+			
+			stage = ValidationStage.SCHEMATICS;
+			stageStart = System.nanoTime();
+			SchematicSet schematicSet = generateSchematics(maze.getSideLengths(), pieceSet, false);
+			SchematicChecker.checkSchematics(maze, schematicSet, false);
+			statistics.record(stage, null, System.nanoTime() - stageStart);
+			MazeStatistics mazeStatistics = new MazeStatistics(gen.getWalls(), gen.getEntrance(), gen.getExit());
+			return new Candidate(candidateNumber, gen, null, null, null, mazeStatistics);
+		}
+		catch (SchematicException e) {
+			statistics.record(stage, e.getRejection(), System.nanoTime() - stageStart);
+			return new Candidate(candidateNumber, gen, e.getRejection(), e.getMessage(), null);
+		}
+		catch (Throwable e) {
+			return new Candidate(candidateNumber, gen, null, null, e);
+		}
+	}
+	// evaluateCandidate reports its own errors in the Candidate, so the task
+	// can only fail if something is badly wrong
+	private static Candidate takeCandidate(Future<Candidate> pendingCandidate) {
+		try {
+			return pendingCandidate.get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
 		}
 	}
 	private static void saveInvalidMaze(GrowingTreeMazeGenerator gen, int mazeSize) {
@@ -112,7 +265,7 @@ public final class SchematicGenerator {
 		List<LayerPiece> layerPieces = generateLayerPieces(maze, tetrisPieces);
 		if (!noUnsupportedPieces(tetrisPieces, layerPieces)) {
 			if (doOutput) System.out.println();
-			if (!overrideExceptions) throw new SchematicException("one or more tetris pieces with insufficient layer piece support", false);
+			if (!overrideExceptions) throw new SchematicException(Rejection.UNSUPPORTED_TETRIS_PIECE);
 		}
 		if (doOutput) System.out.print("Done.\nGenerating side pieces... ");
 		List<SidePiece> sidePieces = generateSidePieces(maze, tetrisPieces, layerPieces);
@@ -426,6 +579,7 @@ public final class SchematicGenerator {
 			int xThenY = isPositiveSide ? (isYZ ? xLength : yLength) - 1 : 0; // either this side or the other side
 			
 			// Add perforations for layer pieces.
+			Direction up = new Direction(1, true), along = new Direction(0, true);
 			for (LayerPiece layerPiece : layerPieces) {
 				int z = layerPiece.z;
 				if (z == -1 || z == zLength) continue; // these will be easier dealt with as special cases
@@ -436,7 +590,7 @@ public final class SchematicGenerator {
 					// If there is a layer tile, we want to perforate the side piece.
 					// This will always be allowable, so we will perforate all outside edges of
 					// all of the layer pieces. (No need to add more data to them!)
-					sidePiece.setPerforation(yThenX, z, new Direction(1, true), isLayerTile);
+					sidePiece.setPerforation(yThenX, z, up, isLayerTile);
 					// Direction 1 is actually upwards in the local coordinate system (corresponds to Direction 2 in the global coordinate system)
 				}
 			}
@@ -447,15 +601,20 @@ public final class SchematicGenerator {
 				int yThenX = tetrisPiece.getNormalOffset();
 				for (int z=tetrisPiece.getMinimumZCoordinate(); z<=tetrisPiece.getMaximumZCoordinate(); z++) {
 					if (tetrisPiece.contains(new int[] {isYZ ? xThenY : yThenX, isYZ ? yThenX : xThenY, z})) {
-						sidePiece.setPerforation(yThenX, z, new Direction(0, true), true); // likewise with Direction 0.
+						sidePiece.setPerforation(yThenX, z, along, true); // likewise with Direction 0.
 					}
 				}
 			}
 			
-			// Add holes if necessary (for entrance and exit).
+			// Add holes if necessary (for entrance and exit). One coordinate buffer
+			// serves the whole face.
+			int[] cell = new int[3];
+			cell[isYZ ? 0 : 1] = xThenY;
 			for (int yThenX=0; yThenX<sidePiece.getWidth(); yThenX++) {
+				cell[isYZ ? 1 : 0] = yThenX;
 				for (int z=0; z<sidePiece.getHeight(); z++) {
-					boolean wallPresent = maze.get(new int[] {isYZ ? xThenY : yThenX, isYZ ? yThenX : xThenY, z}).getWall(normalDirection);
+					cell[2] = z;
+					boolean wallPresent = maze.get(cell).getWall(normalDirection);
 					if (!wallPresent) {
 						sidePiece.addHole(new Coordinate(yThenX, z));
 					}
@@ -677,12 +836,10 @@ public final class SchematicGenerator {
 		MultiDimensionalArray<LinkedHashMap<TetrisWallPiece, Boolean>> columnPossibilities = new MultiDimensionalArray<>(
 				new int[] {mazeSize[0] - 1, mazeSize[1] - 1, mazeSize[2]});
 		columnPossibilities.fill(() -> new LinkedHashMap<>());
-		Trilean[][][] alreadyOccupied = new Trilean[mazeSize[0]-1][mazeSize[1]-1][mazeSize[2]];
-		for (int x=0; x<alreadyOccupied.length; x++)
-			for (int y=0; y<alreadyOccupied[x].length; y++)
-				for (int z=0; z<alreadyOccupied[x][y].length; z++)
-					alreadyOccupied[x][y][z] = Trilean.False;
-		// False -> True -> FileNotFound
+		// Number of times a piece has been found on both sides of each column:
+		// 0 -> 1 -> 2 (once from each side), at which point it occupies it
+		ByteMultiDimensionalArray alreadyOccupied = new ByteMultiDimensionalArray(
+				new int[] {mazeSize[0] - 1, mazeSize[1] - 1, mazeSize[2]});
 //		System.out.println("FINDING COLUMN POSSIBILITIES");
 		for (TetrisWallPiece tetrisPiece : tetrisPieces) {
 //			System.out.println(tetrisPiece);
@@ -705,7 +862,7 @@ public final class SchematicGenerator {
 //					System.out.println("Location is within grid bounds.");
 					// Stop adding new pieces if we have already found one that "already occupies" the column
 					// Otherwise, add the piece we have found.
-					if (alreadyOccupied[leftLocation[0]][leftLocation[1]][leftLocation[2]] != Trilean.FileNotFound) {
+					if (alreadyOccupied.get(leftLocation) != 2) {
 //						System.out.println("Adding this piece as a possibility.");
 						columnPossibilities.get(leftLocation).put(tetrisPiece, isBottom);
 					}
@@ -716,12 +873,9 @@ public final class SchematicGenerator {
 					// as a consequence of having tiles on either side of it
 					if (tetrisPiece.contains(leftCoord)) {
 //						System.out.println("Tetris piece fully contains this column.");
-						switch (alreadyOccupied[leftLocation[0]][leftLocation[1]][leftLocation[2]]) {
-						case False: alreadyOccupied[leftLocation[0]][leftLocation[1]][leftLocation[2]] = Trilean.True; break;
-						case True: alreadyOccupied[leftLocation[0]][leftLocation[1]][leftLocation[2]] = Trilean.FileNotFound; break;
-						case FileNotFound: throw new AssertionError();
-						default: throw new AssertionError();
-						}
+						byte occupied = alreadyOccupied.get(leftLocation);
+						if (occupied == 2) throw new AssertionError();
+						alreadyOccupied.set(leftLocation, (byte) (occupied + 1));
 					}
 				}
 				
@@ -730,7 +884,7 @@ public final class SchematicGenerator {
 						location[1] >= 0 && location[1] < mazeSize[1] - 1 &&
 						location[2] >= 0 && location[2] < mazeSize[2]) {
 //					System.out.println("Location is within grid bounds.");
-					if (alreadyOccupied[location[0]][location[1]][location[2]] != Trilean.FileNotFound) {
+					if (alreadyOccupied.get(location) != 2) {
 //						System.out.println("Adding this piece as a possibility.");
 						columnPossibilities.get(location).put(tetrisPiece, isBottom);
 					}
@@ -739,23 +893,18 @@ public final class SchematicGenerator {
 					}
 					if (tetrisPiece.contains(rightCoord)) {
 //						System.out.println("Tetris piece fully contains this column.");
-						switch (alreadyOccupied[location[0]][location[1]][location[2]]) {
-						case False: alreadyOccupied[location[0]][location[1]][location[2]] = Trilean.True; break;
-						case True: alreadyOccupied[location[0]][location[1]][location[2]] = Trilean.FileNotFound; break;
-						case FileNotFound: throw new AssertionError();
-						default: throw new AssertionError();
-						}
+						byte occupied = alreadyOccupied.get(location);
+						if (occupied == 2) throw new AssertionError();
+						alreadyOccupied.set(location, (byte) (occupied + 1));
 					}
 				}
 			}
 		}
 //		System.out.println(columnPossibilities);
 		
-		for (int x=0; x<alreadyOccupied.length; x++)
-			for (int y=0; y<alreadyOccupied[x].length; y++)
-				for (int z=0; z<alreadyOccupied[x][y].length; z++)
-					if (alreadyOccupied[x][y][z] == Trilean.True) throw new AssertionError(); // should be False or FileNotFound
-		
+		for (int i=0; i<alreadyOccupied.totalLength; i++)
+			if (alreadyOccupied.get(i) == 1) throw new AssertionError(); // should be 0 or 2
+					
 		// Determine how for each tetris piece can go up. -1 indicates that it can't start there.
 		MultiDimensionalArray<Map<TetrisWallPiece, Integer>> distanceUpward =
 				new MultiDimensionalArray<>(new int[] {mazeSize[0]-1, mazeSize[1]-1, mazeSize[2]});
@@ -798,7 +947,7 @@ public final class SchematicGenerator {
 //					System.out.println("Analyzing z = " + z + "...");
 					int[] location = new int[] {x, y, z};
 					Map.Entry<TetrisWallPiece, Integer> chosenEntry;
-					if (alreadyOccupied[x][y][z] == Trilean.FileNotFound) {
+					if (alreadyOccupied.get(location) == 2) {
 //						System.out.println("Current column is already occupied.");
 						// If a piece already occupies this central column, pick it -- for sure.
 						// Since we used a LinkedHashMap, and since we prevented any pieces from
@@ -853,7 +1002,7 @@ public final class SchematicGenerator {
 					if (counter == 0) {
 //						System.out.println("We ran out of pieces... *cries*");
 						currentPiece = null;
-						throw new SchematicException(String.format("cannot fill central column at (%d, %d, %d)", x, y, z), true);
+						throw new SchematicException(Rejection.UNFILLED_CENTRAL_COLUMN, String.format("cannot fill central column at (%d, %d, %d)", x, y, z));
 					}
 					// Make a note of our choice.
 					columnChoices[x][y][z] = currentPiece;
@@ -0,0 +1,15 @@
+package mazes.schematic;
+
+// The stages that a candidate maze passes through before it is saved, from
+// cheapest to most expensive. A maze rejected at one stage never reaches the
+// next.
+public enum ValidationStage {
+	
+	// WallChecker, on the wall bits alone
+	WALLS,
+	// generatePieces
+	PIECES,
+	// generateSchematics and SchematicChecker
+	SCHEMATICS;
+	
+}
@@ -0,0 +1,92 @@
+package mazes.schematic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts, for each validation stage, the candidates that entered it, the
+// candidates it rejected and the time spent in it, and, for each reason, the
+// candidates rejected for it. Safe to share between the threads of a search.
+public final class ValidationStatistics {
+	
+	private static final ValidationStage[] stages = ValidationStage.values();
+	private static final Rejection[] rejections = Rejection.values();
+	
+	private final AtomicLongArray entered = new AtomicLongArray(stages.length);
+	private final AtomicLongArray rejected = new AtomicLongArray(stages.length);
+	private final AtomicLongArray nanos = new AtomicLongArray(stages.length);
+	private final AtomicLongArray reasons = new AtomicLongArray(rejections.length);
+	private final long startNanos = System.nanoTime();
+	
+	// The rejection is null if the candidate passed the stage.
+	public void record(ValidationStage stage, Rejection rejection, long elapsedNanos) {
+		entered.incrementAndGet(stage.ordinal());
+		if (rejection != null) {
+			rejected.incrementAndGet(stage.ordinal());
+			reasons.incrementAndGet(rejection.ordinal());
+		}
+		nanos.addAndGet(stage.ordinal(), elapsedNanos);
+	}
+	
+	public long getEntered(ValidationStage stage) {
+		return entered.get(stage.ordinal());
+	}
+	public long getRejected(ValidationStage stage) {
+		return rejected.get(stage.ordinal());
+	}
+	public long getRejected(Rejection rejection) {
+		return reasons.get(rejection.ordinal());
+	}
+	public long getTotalRejected() {
+		long total = 0;
+		for (ValidationStage stage : stages) {
+			total += getRejected(stage);
+		}
+		return total;
+	}
+	public long getNanos(ValidationStage stage) {
+		return nanos.get(stage.ordinal());
+	}
+	public double getAverageNanos(ValidationStage stage) {
+		long count = getEntered(stage);
+		return count == 0 ? 0 : (double) getNanos(stage) / count;
+	}
+	// Estimated time not spent because of this stage's rejections: each of
+	// them would otherwise have gone on to the next stage, at that stage's
+	// average cost. (A maze rejected by WallChecker would always have been
+	// rejected by generatePieces, so it would have gone no further.)
+	public double getNanosSaved(ValidationStage stage) {
+		if (stage.ordinal() == stages.length - 1) return 0;
+		return getRejected(stage) * getAverageNanos(stages[stage.ordinal() + 1]);
+	}
+	// Over the wall-clock time since these statistics were created
+	public double getRejectionsPerSecond() {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		return elapsedNanos == 0 ? 0 : getTotalRejected() * 1e9 / elapsedNanos;
+	}
+	
+	// One line, for progress reports during a search
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d candidates, %d rejected (%.1f/s)",
+				getEntered(stages[0]), getTotalRejected(), getRejectionsPerSecond()));
+		for (Rejection rejection : rejections) {
+			sb.append(String.format(", %s: %d", rejection.getDescription(), getRejected(rejection)));
+		}
+		return sb.toString();
+	}
+	
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-10s %10s %10s %12s %12s%n", "stage", "entered", "rejected", "avg time", "time saved"));
+		for (ValidationStage stage : stages) {
+			sb.append(String.format("%-10s %10d %10d %10.3fms %11.1fs%n",
+					stage, getEntered(stage), getRejected(stage), getAverageNanos(stage) / 1e6, getNanosSaved(stage) / 1e9));
+		}
+		sb.append(String.format("%-28s %10s%n", "reason", "rejected"));
+		for (Rejection rejection : rejections) {
+			sb.append(String.format("%-28s %10d%n", rejection, getRejected(rejection)));
+		}
+		sb.append(String.format("%.1f rejections per second%n", getRejectionsPerSecond()));
+		return sb.toString();
+	}
+	
+}
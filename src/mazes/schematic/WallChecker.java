@@ -0,0 +1,39 @@
+package mazes.schematic;
+
+import mazes.gen.WallGrid;
+import mazes.gen.WallSupport;
+
+// Cheap checks that reject many unbuildable mazes directly from their walls,
+// before any pieces or schematics are generated. A maze is rejected here
+// exactly when generatePieces would reject it. Nearly every rejected candidate
+// is rejected here, so the result is returned rather than thrown.
+public final class WallChecker {
+	
+	private WallChecker() {}
+	
+	// Returns the reason the maze can't be built, or null if it passes.
+	public static Rejection checkWalls(WallGrid walls) {
+		if (walls.getDimensionCount() != 3) throw new IllegalArgumentException();
+		if (!hasSupportedTetrisPieces(walls)) return Rejection.UNSUPPORTED_TETRIS_PIECE;
+		return null;
+	}
+	
+	// See WallSupport. Each piece is checked once, from its first run.
+	private static boolean hasSupportedTetrisPieces(WallGrid walls) {
+		// The XZ planes (walls in the +y direction) and then the YZ planes
+		for (int dimension : new int[] {1, 0}) {
+			for (int x=0; x<walls.getSideLength(0); x++) {
+				for (int y=0; y<walls.getSideLength(1); y++) {
+					for (int z=0; z<walls.getSideLength(2); z++) {
+						long index = walls.getIndex(new int[] {x, y, z});
+						if (WallSupport.isFirstRun(walls, dimension, index) && WallSupport.isUnsupported(walls, dimension, index)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+}
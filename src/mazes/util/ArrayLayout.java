@@ -0,0 +1,14 @@
+package mazes.util;
+
+// How the elements of a multidimensional array are ordered in memory.
+public enum ArrayLayout {
+	
+	// The first dimension varies fastest, so neighbors along the last
+	// dimension of a large array are far apart
+	ROW_MAJOR,
+	// Z-order (see MortonCode): neighbors along every dimension are usually
+	// close together, at the cost of padding each side length up to a power
+	// of two
+	MORTON;
+	
+}
@@ -0,0 +1,199 @@
+package mazes.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// The shape of a multidimensional array and the mapping between indices and
+// flat indices, which follows the layout chosen at construction.
+// MultiDimensionalArray delegates to one, and its primitive siblings
+// (IntMultiDimensionalArray, BitMultiDimensionalArray and
+// ByteMultiDimensionalArray) extend it, so they all lay out their elements
+// the same way.
+public class ArrayShape implements Serializable {
+	
+	public static final long serialVersionUID = 2740183522869171546L;
+	
+	private final int[] sideLengths;
+	public final int dimensionCount;
+	
+	private final int[] cumulativeRowLengths;
+	public final int totalLength;
+	// null in the row-major layout
+	private final MortonCode morton;
+	
+	public ArrayShape(int[] sideLengths, ArrayLayout layout) {
+		this(sideLengths, layout, null);
+	}
+	// For arrays read back with their Morton code (null in the row-major
+	// layout)
+	ArrayShape(int[] sideLengths, MortonCode morton) {
+		this(sideLengths, morton == null ? ArrayLayout.ROW_MAJOR : ArrayLayout.MORTON, morton);
+	}
+	private ArrayShape(int[] sideLengths, ArrayLayout layout, MortonCode morton) {
+		if (sideLengths == null) throw new NullPointerException();
+		if (sideLengths.length == 0) throw new IllegalArgumentException();
+		
+		this.sideLengths = Arrays.copyOf(sideLengths, sideLengths.length);
+		this.dimensionCount = sideLengths.length;
+		
+		this.cumulativeRowLengths = new int[dimensionCount];
+		long cumulativeRowLength = 1;
+		for (int i=0; i<dimensionCount; i++) {
+			if (sideLengths[i] < 0) throw new IllegalArgumentException();
+			cumulativeRowLengths[i] = (int) cumulativeRowLength;
+			cumulativeRowLength *= sideLengths[i];
+			// Larger grids need chunked storage (see WallGrid)
+			if (cumulativeRowLength > Integer.MAX_VALUE) throw new IllegalArgumentException();
+		}
+		this.totalLength = (int) cumulativeRowLength;
+		if (layout != ArrayLayout.MORTON) {
+			this.morton = null;
+		}
+		else {
+			this.morton = morton != null ? morton : new MortonCode(this.sideLengths);
+		}
+	}
+	
+	public int getSideLength(int index) {
+		return sideLengths[index];
+	}
+	public int[] getSideLengths() {
+		return Arrays.copyOf(sideLengths, dimensionCount);
+	}
+	public ArrayLayout getLayout() {
+		return morton == null ? ArrayLayout.ROW_MAJOR : ArrayLayout.MORTON;
+	}
+	// Flat indices run from 0 to this, which is more than totalLength in
+	// layouts with holes
+	public int getFlatLength() {
+		return morton == null ? totalLength : morton.getCapacity();
+	}
+	// Difference between the flat indices of neighbors along a dimension
+	// (row-major layout only)
+	public int getStride(int dimension) {
+		if (morton != null) throw new UnsupportedOperationException();
+		return cumulativeRowLengths[dimension];
+	}
+	
+	// Shared with MultiDimensionalArray, which saves them with its elements
+	int[] getCumulativeRowLengths() {
+		return cumulativeRowLengths;
+	}
+	MortonCode getMortonCode() {
+		return morton;
+	}
+	
+	public boolean isValidIndex(int[] indices) {
+		return indexOf(indices) != -1;
+	}
+	public boolean isValidIndex(int index) {
+		if (morton != null) return index >= 0 && index < morton.getCapacity() && !morton.isHole(index);
+		return index >= 0 && index < totalLength;
+	}
+	// Flat index of the element at the given indices, or -1 if they are out
+	// of bounds
+	public int indexOf(int[] indices) {
+		if (indices == null) throw new NullPointerException();
+		if (indices.length != dimensionCount) throw new IllegalArgumentException();
+		int index = 0;
+		for (int i=0; i<dimensionCount; i++) {
+			if (indices[i] < 0 || indices[i] >= sideLengths[i]) return -1;
+			index += indices[i] * cumulativeRowLengths[i];
+		}
+		return morton == null ? index : morton.encode(indices);
+	}
+	public int getIndex(int[] indices) {
+		int index = indexOf(indices);
+		if (index == -1) throw new IndexOutOfBoundsException();
+		return index;
+	}
+	public int[] getIndices(int index) {
+		return getIndices(index, new int[dimensionCount]);
+	}
+	public int[] getIndices(int index, int[] indices) {
+		if (!isValidIndex(index)) throw new IndexOutOfBoundsException();
+		for (int i=0; i<dimensionCount; i++) {
+			indices[i] = getIndex(index, i);
+		}
+		return indices;
+	}
+	// Coordinate of a flat index along one dimension
+	public int getIndex(int index, int dimension) {
+		if (morton != null) return morton.getCoordinate(index, dimension);
+		return index / cumulativeRowLengths[dimension] % sideLengths[dimension];
+	}
+	// Flat index of the neighbor in the given direction (see
+	// Direction.getIndex()), or -1 if it is outside the array
+	public int getNeighborIndex(int index, int direction) {
+		int dimension = direction >> 1;
+		boolean isPositive = (direction & 1) != 0;
+		if (morton != null) {
+			if (isPositive ? morton.isLast(index, dimension) : morton.isFirst(index, dimension)) return -1;
+			return morton.step(index, dimension, isPositive);
+		}
+		int coordinate = getIndex(index, dimension);
+		if (isPositive) {
+			return coordinate == sideLengths[dimension] - 1 ? -1 : index + cumulativeRowLengths[dimension];
+		}
+		else {
+			return coordinate == 0 ? -1 : index - cumulativeRowLengths[dimension];
+		}
+	}
+	// Visits the flat index of every element, in the order they are laid out
+	// in memory
+	public void forEachIndex(IntConsumer action) {
+		if (action == null) throw new NullPointerException();
+		for (int index=0; index<getFlatLength(); index++) {
+			if (morton == null || !morton.isHole(index)) action.accept(index);
+		}
+	}
+	// Lazy iteration over flat indices (see CellSpliterator): every element,
+	// the elements on the border, or those on one face
+	public CellSpliterator getInteriorCells() {
+		return CellSpliterator.interior(sideLengths, cumulativeRowLengths, 0, morton);
+	}
+	public CellSpliterator getBorderCells() {
+		return CellSpliterator.border(sideLengths, cumulativeRowLengths, 0, morton);
+	}
+	public CellSpliterator getFaceCells(Direction face) {
+		return CellSpliterator.face(sideLengths, face, cumulativeRowLengths, 0, morton);
+	}
+	// Differences between the flat indices of neighbors, in
+	// Direction.getIndex() order; only meaningful away from the edges (and
+	// only in the row-major layout)
+	public int[] getNeighborOffsets() {
+		if (morton != null) throw new UnsupportedOperationException();
+		int[] offsets = new int[dimensionCount * 2];
+		for (int d=0; d<dimensionCount; d++) {
+			offsets[2 * d] = -cumulativeRowLengths[d];
+			offsets[2 * d + 1] = cumulativeRowLengths[d];
+		}
+		return offsets;
+	}
+	
+	public boolean isInterior(int[] index) {
+		return MultiDimensionalArray.isInterior(index, sideLengths);
+	}
+	public boolean isInteriorOrBorder(int[] index) {
+		return MultiDimensionalArray.isInteriorOrBorder(index, sideLengths);
+	}
+	public boolean isInsideBorder(int[] index) {
+		return MultiDimensionalArray.isInsideBorder(index, sideLengths);
+	}
+	public boolean isInsideBorder(int index) {
+		if (!isValidIndex(index)) return false;
+		for (int d=0; d<dimensionCount; d++) {
+			int coordinate = getIndex(index, d);
+			if (coordinate == 0 || coordinate == sideLengths[d] - 1) return true;
+		}
+		return false;
+	}
+	public Direction getDirectionIntoGrid(int[] index) {
+		return MultiDimensionalArray.getDirectionIntoGrid(index, sideLengths);
+	}
+	public Direction getDirectionOutOfGrid(int[] index) {
+		return MultiDimensionalArray.getDirectionOutOfGrid(index, sideLengths);
+	}
+	
+}
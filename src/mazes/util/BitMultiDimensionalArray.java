@@ -0,0 +1,54 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+// One bit per element, packed into longs
+public final class BitMultiDimensionalArray extends ArrayShape {
+	
+	public static final long serialVersionUID = 8194726305517382648L;
+	
+	private final long[] data;
+	
+	public BitMultiDimensionalArray(int[] sideLengths) {
+		this(sideLengths, ArrayLayout.ROW_MAJOR);
+	}
+	public BitMultiDimensionalArray(int[] sideLengths, ArrayLayout layout) {
+		super(sideLengths, layout);
+		this.data = new long[(getFlatLength() + 63) >>> 6];
+	}
+	
+	public boolean get(int[] indices) {
+		return get(getIndex(indices));
+	}
+	public void set(int[] indices, boolean value) {
+		set(getIndex(indices), value);
+	}
+	// Flat indices are only checked against the underlying array, which
+	// may have room for a few more bits than there are elements
+	public boolean get(int index) {
+		return (data[index >>> 6] & (1L << index)) != 0;
+	}
+	public void set(int index, boolean value) {
+		if (value) {
+			data[index >>> 6] |= 1L << index;
+		}
+		else {
+			data[index >>> 6] &= ~(1L << index);
+		}
+	}
+	public void fill(boolean initialValue) {
+		Arrays.fill(data, initialValue ? -1L : 0L);
+	}
+	
+	// Elements in layout order
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		forEachIndex(index -> {
+			if (sb.length() != 1) sb.append(", ");
+			sb.append(get(index));
+		});
+		sb.append("]");
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,47 @@
+package mazes.util;
+
+import java.io.Serializable;
+
+// A long-indexed array of bits, kept on the heap (ChunkedBitArray) or in a
+// memory-mapped file (MappedBitArray). Storages with the same bits are equal
+// whichever kind they are.
+public abstract class BitStorage implements Serializable {
+	
+	public static final long serialVersionUID = 3307945184203126575L;
+	
+	public abstract long getLength();
+	public abstract boolean get(long index);
+	public abstract void set(long index, boolean value);
+	public abstract void fill(boolean initialValue);
+	
+	// Bits 64 * word to 64 * word + 63, lowest first; bits past the end are
+	// clear
+	protected abstract long getWord(long word);
+	protected final long getWordCount() {
+		return (getLength() + 63) >>> 6;
+	}
+	
+	@Override public int hashCode() {
+		final int prime = 31;
+		int result = Long.hashCode(getLength());
+		for (long word=0; word<getWordCount(); word++) {
+			result = prime * result + Long.hashCode(getWord(word));
+		}
+		return result;
+	}
+	@Override public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BitStorage))
+			return false;
+		BitStorage other = (BitStorage) obj;
+		if (getLength() != other.getLength())
+			return false;
+		for (long word=0; word<getWordCount(); word++) {
+			if (getWord(word) != other.getWord(word))
+				return false;
+		}
+		return true;
+	}
+	
+}
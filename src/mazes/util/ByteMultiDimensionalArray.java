@@ -0,0 +1,46 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+public final class ByteMultiDimensionalArray extends ArrayShape {
+	
+	public static final long serialVersionUID = 3318527409716650284L;
+	
+	private final byte[] data;
+	
+	public ByteMultiDimensionalArray(int[] sideLengths) {
+		this(sideLengths, ArrayLayout.ROW_MAJOR);
+	}
+	public ByteMultiDimensionalArray(int[] sideLengths, ArrayLayout layout) {
+		super(sideLengths, layout);
+		this.data = new byte[getFlatLength()];
+	}
+	
+	public byte get(int[] indices) {
+		return data[getIndex(indices)];
+	}
+	public void set(int[] indices, byte value) {
+		data[getIndex(indices)] = value;
+	}
+	public byte get(int index) {
+		return data[index];
+	}
+	public void set(int index, byte value) {
+		data[index] = value;
+	}
+	public void fill(byte initialValue) {
+		Arrays.fill(data, initialValue);
+	}
+	
+	// Elements in layout order
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		forEachIndex(index -> {
+			if (sb.length() != 1) sb.append(", ");
+			sb.append(data[index]);
+		});
+		sb.append("]");
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,163 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+// The walk shared by CellSpliterator and LongCellSpliterator. The cells are
+// the union of disjoint boxes, visited box by box, each with the first
+// dimension varying fastest, and the coordinates of the current cell are
+// kept in one buffer.
+//
+// Flat indices are either offset + the sum of coordinate * stride (so padded
+// grids like WallGrid can shift every coordinate by one), or Morton codes.
+abstract class CellCursor {
+	
+	// Box b spans [lows[b][d], highs[b][d]) in each dimension d; boxStarts[b]
+	// is the position of its first cell, and boxStarts[boxCount] the total
+	private final int[][] lows;
+	private final int[][] highs;
+	private final long[] boxStarts;
+	private final long[] strides;
+	private final long offset;
+	private final MortonCode morton;
+	
+	private long position;
+	private long end;
+	// The box of the cell at position - 1, or -1 before the first advance
+	private int box = -1;
+	private final int[] coordinates;
+	
+	CellCursor(int[][][] boxes, long[] strides, long offset, MortonCode morton) {
+		this.lows = boxes[0];
+		this.highs = boxes[1];
+		this.boxStarts = new long[lows.length + 1];
+		for (int b=0; b<lows.length; b++) {
+			long volume = 1;
+			for (int d=0; d<lows[b].length; d++) {
+				volume *= Math.max(highs[b][d] - lows[b][d], 0);
+			}
+			boxStarts[b + 1] = boxStarts[b] + volume;
+		}
+		this.strides = strides;
+		this.offset = offset;
+		this.morton = morton;
+		this.position = 0;
+		this.end = boxStarts[lows.length];
+		this.coordinates = new int[lows.length == 0 ? 0 : lows[0].length];
+	}
+	// The second half of the parent's remaining cells, which keeps the first
+	CellCursor(CellCursor parent) {
+		this.lows = parent.lows;
+		this.highs = parent.highs;
+		this.boxStarts = parent.boxStarts;
+		this.strides = parent.strides;
+		this.offset = parent.offset;
+		this.morton = parent.morton;
+		this.position = (parent.position + parent.end) >>> 1;
+		this.end = parent.end;
+		this.coordinates = new int[parent.coordinates.length];
+		parent.end = position;
+	}
+	
+	// Every cell of a grid with the given side lengths
+	static int[][][] interior(int[] sideLengths) {
+		return new int[][][] {{new int[sideLengths.length]}, {sideLengths.clone()}};
+	}
+	// The cells with at least one coordinate at 0 or sideLength - 1. Face d
+	// only covers the cells not already on faces 0 to d-1, so each cell is
+	// visited once and interior cells are never looked at.
+	static int[][][] border(int[] sideLengths) {
+		int dimensionCount = sideLengths.length;
+		int[][] lows = new int[dimensionCount * 2][];
+		int[][] highs = new int[dimensionCount * 2][];
+		int boxCount = 0;
+		for (int d=0; d<dimensionCount; d++) {
+			for (int side=0; side<2; side++) {
+				int coordinate = side == 0 ? 0 : sideLengths[d] - 1;
+				// A side length of 1 has only one face in that dimension
+				if (side == 1 && coordinate <= 0) continue;
+				int[] low = new int[dimensionCount];
+				int[] high = sideLengths.clone();
+				for (int e=0; e<d; e++) {
+					low[e] = 1;
+					high[e] = sideLengths[e] - 1;
+				}
+				low[d] = coordinate;
+				high[d] = coordinate + 1;
+				lows[boxCount] = low;
+				highs[boxCount] = high;
+				boxCount += 1;
+			}
+		}
+		return new int[][][] {Arrays.copyOf(lows, boxCount), Arrays.copyOf(highs, boxCount)};
+	}
+	// The cells on one face: those whose coordinate in the face's dimension
+	// is 0 (negative face) or sideLength - 1 (positive face)
+	static int[][][] face(int[] sideLengths, Direction face) {
+		int dimension = face.getDimension();
+		int[] low = new int[sideLengths.length];
+		int[] high = sideLengths.clone();
+		low[dimension] = face.isPositive() ? Math.max(sideLengths[dimension] - 1, 0) : 0;
+		high[dimension] = Math.min(low[dimension] + 1, sideLengths[dimension]);
+		return new int[][][] {{low}, {high}};
+	}
+	
+	// Coordinates of the cell most recently passed to an action. The buffer
+	// is reused, so copy it to keep it.
+	public int[] getCoordinates() {
+		return coordinates;
+	}
+	
+	// Moves to the next cell, returning false if there are none left
+	final boolean advance() {
+		if (position >= end) return false;
+		if (box != -1 && position < boxStarts[box + 1]) {
+			increment();
+		}
+		else {
+			seek();
+		}
+		position += 1;
+		return true;
+	}
+	// Moves to the next cell of the current box
+	private void increment() {
+		int[] low = lows[box], high = highs[box];
+		for (int d=0; d<coordinates.length; d++) {
+			if (coordinates[d] + 1 < high[d]) {
+				coordinates[d] += 1;
+				return;
+			}
+			coordinates[d] = low[d];
+		}
+	}
+	// Finds the cell at position from scratch
+	private void seek() {
+		box = 0;
+		while (boxStarts[box + 1] <= position) {
+			box += 1;
+		}
+		long local = position - boxStarts[box];
+		for (int d=0; d<coordinates.length; d++) {
+			int extent = highs[box][d] - lows[box][d];
+			coordinates[d] = lows[box][d] + (int) (local % extent);
+			local /= extent;
+		}
+	}
+	// Flat index of the current cell
+	final long getIndex() {
+		if (morton != null) return morton.encode(coordinates);
+		long index = offset;
+		for (int d=0; d<coordinates.length; d++) {
+			index += coordinates[d] * strides[d];
+		}
+		return index;
+	}
+	
+	final boolean canSplit() {
+		return end - position >= 2;
+	}
+	public final long estimateSize() {
+		return end - position;
+	}
+	
+}
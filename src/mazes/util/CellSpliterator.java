@@ -0,0 +1,75 @@
+package mazes.util;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+// Lazy iteration over a set of cells, yielding their flat indices (see
+// CellCursor). Nothing is allocated per cell: the coordinates of the current
+// cell are kept in one buffer (see getCoordinates()). Splits halve the
+// remaining cells, so parallel streams divide the work evenly. Grids indexed
+// by long use LongCellSpliterator.
+public final class CellSpliterator extends CellCursor implements Spliterator.OfInt {
+	
+	private CellSpliterator(int[][][] boxes, int[] strides, int offset, MortonCode morton) {
+		super(boxes, toLongs(strides), offset, morton);
+	}
+	private CellSpliterator(CellSpliterator parent) {
+		super(parent);
+	}
+	private static long[] toLongs(int[] values) {
+		long[] longs = new long[values.length];
+		for (int i=0; i<values.length; i++) {
+			longs[i] = values[i];
+		}
+		return longs;
+	}
+	
+	// For row-major grids with the given strides, whose flat indices start
+	// at offset
+	public static CellSpliterator interior(int[] sideLengths, int[] strides, int offset) {
+		return interior(sideLengths, strides, offset, null);
+	}
+	public static CellSpliterator border(int[] sideLengths, int[] strides, int offset) {
+		return border(sideLengths, strides, offset, null);
+	}
+	public static CellSpliterator face(int[] sideLengths, Direction face, int[] strides, int offset) {
+		return face(sideLengths, face, strides, offset, null);
+	}
+	
+	static CellSpliterator interior(int[] sideLengths, int[] strides, int offset, MortonCode morton) {
+		return new CellSpliterator(CellCursor.interior(sideLengths), strides, offset, morton);
+	}
+	static CellSpliterator border(int[] sideLengths, int[] strides, int offset, MortonCode morton) {
+		return new CellSpliterator(CellCursor.border(sideLengths), strides, offset, morton);
+	}
+	static CellSpliterator face(int[] sideLengths, Direction face, int[] strides, int offset, MortonCode morton) {
+		return new CellSpliterator(CellCursor.face(sideLengths, face), strides, offset, morton);
+	}
+	
+	@Override public boolean tryAdvance(IntConsumer action) {
+		if (action == null) throw new NullPointerException();
+		if (!advance()) return false;
+		action.accept((int) getIndex());
+		return true;
+	}
+	@Override public void forEachRemaining(IntConsumer action) {
+		if (action == null) throw new NullPointerException();
+		while (advance()) {
+			action.accept((int) getIndex());
+		}
+	}
+	
+	@Override public CellSpliterator trySplit() {
+		return canSplit() ? new CellSpliterator(this) : null;
+	}
+	@Override public int characteristics() {
+		return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+	
+	public IntStream stream(boolean parallel) {
+		return StreamSupport.intStream(this, parallel);
+	}
+	
+}
@@ -0,0 +1,69 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+// A long-indexed array of bits, stored in fixed-size chunks of longs so that
+// it is not limited by the maximum size of a Java array. Indices are only
+// checked against the chunks, which may have room for a few more bits than
+// the length; those bits should be left clear.
+public final class ChunkedBitArray extends BitStorage {
+	
+	public static final long serialVersionUID = -2176630449821035361L;
+	
+	// 2^20 longs (8 MiB, 2^26 bits) per chunk
+	private static final int chunkBits = 26;
+	private static final long chunkMask = (1L << chunkBits) - 1;
+	private static final int chunkWordBits = chunkBits - 6;
+	private static final long chunkWordMask = (1L << chunkWordBits) - 1;
+	
+	private final long length;
+	private final long[][] chunks;
+	
+	public ChunkedBitArray(long length) {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		long wordCount = (length + 63) >>> 6;
+		int chunkCount = (int) ((length + chunkMask) >>> chunkBits);
+		this.chunks = new long[chunkCount][];
+		for (int c=0; c<chunkCount; c++) {
+			chunks[c] = new long[(int) Math.min(wordCount - ((long) c << chunkWordBits), 1 << chunkWordBits)];
+		}
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public boolean get(long index) {
+		return (chunks[(int) (index >>> chunkBits)][(int) (index & chunkMask) >>> 6] & (1L << index)) != 0;
+	}
+	@Override public void set(long index, boolean value) {
+		long[] chunk = chunks[(int) (index >>> chunkBits)];
+		int word = (int) (index & chunkMask) >>> 6;
+		if (value) {
+			chunk[word] |= 1L << index;
+		}
+		else {
+			chunk[word] &= ~(1L << index);
+		}
+	}
+	@Override public void fill(boolean initialValue) {
+		for (long[] chunk : chunks) {
+			Arrays.fill(chunk, initialValue ? -1L : 0L);
+		}
+		// Bits past the end stay clear (see getWord)
+		if (initialValue && (length & 63) != 0) {
+			long[] lastChunk = chunks[chunks.length - 1];
+			lastChunk[lastChunk.length - 1] = -1L >>> -length;
+		}
+	}
+	
+	@Override protected long getWord(long word) {
+		return chunks[(int) (word >>> chunkWordBits)][(int) (word & chunkWordMask)];
+	}
+	// For copying other storages
+	void setWord(long word, long value) {
+		chunks[(int) (word >>> chunkWordBits)][(int) (word & chunkWordMask)] = value;
+	}
+	
+}
@@ -0,0 +1,44 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+// A long-indexed array of ints, stored in fixed-size chunks so that it is
+// not limited by the maximum size of a Java array
+public final class ChunkedIntArray extends IntStorage {
+	
+	public static final long serialVersionUID = 5528342985317602214L;
+	
+	// 2^22 ints (16 MiB) per chunk
+	private static final int chunkBits = 22;
+	private static final long chunkMask = (1L << chunkBits) - 1;
+	
+	private final long length;
+	private final int[][] chunks;
+	
+	public ChunkedIntArray(long length) {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		int chunkCount = (int) ((length + chunkMask) >>> chunkBits);
+		this.chunks = new int[chunkCount][];
+		for (int c=0; c<chunkCount; c++) {
+			chunks[c] = new int[(int) Math.min(length - ((long) c << chunkBits), 1 << chunkBits)];
+		}
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public int get(long index) {
+		return chunks[(int) (index >>> chunkBits)][(int) (index & chunkMask)];
+	}
+	@Override public void set(long index, int value) {
+		chunks[(int) (index >>> chunkBits)][(int) (index & chunkMask)] = value;
+	}
+	@Override public void fill(int initialValue) {
+		for (int[] chunk : chunks) {
+			Arrays.fill(chunk, initialValue);
+		}
+	}
+	
+}
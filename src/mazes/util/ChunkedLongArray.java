@@ -0,0 +1,44 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+// A long-indexed array of longs, stored in fixed-size chunks so that it is
+// not limited by the maximum size of a Java array
+public final class ChunkedLongArray extends LongStorage {
+	
+	public static final long serialVersionUID = -8412870671953311154L;
+	
+	// 2^21 longs (16 MiB) per chunk
+	private static final int chunkBits = 21;
+	private static final long chunkMask = (1L << chunkBits) - 1;
+	
+	private final long length;
+	private final long[][] chunks;
+	
+	public ChunkedLongArray(long length) {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		int chunkCount = (int) ((length + chunkMask) >>> chunkBits);
+		this.chunks = new long[chunkCount][];
+		for (int c=0; c<chunkCount; c++) {
+			chunks[c] = new long[(int) Math.min(length - ((long) c << chunkBits), 1 << chunkBits)];
+		}
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public long get(long index) {
+		return chunks[(int) (index >>> chunkBits)][(int) (index & chunkMask)];
+	}
+	@Override public void set(long index, long value) {
+		chunks[(int) (index >>> chunkBits)][(int) (index & chunkMask)] = value;
+	}
+	@Override public void fill(long initialValue) {
+		for (long[] chunk : chunks) {
+			Arrays.fill(chunk, initialValue);
+		}
+	}
+	
+}
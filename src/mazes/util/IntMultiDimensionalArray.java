@@ -0,0 +1,46 @@
+package mazes.util;
+
+import java.util.Arrays;
+
+public final class IntMultiDimensionalArray extends ArrayShape {
+	
+	public static final long serialVersionUID = -6035829178362416905L;
+	
+	private final int[] data;
+	
+	public IntMultiDimensionalArray(int[] sideLengths) {
+		this(sideLengths, ArrayLayout.ROW_MAJOR);
+	}
+	public IntMultiDimensionalArray(int[] sideLengths, ArrayLayout layout) {
+		super(sideLengths, layout);
+		this.data = new int[getFlatLength()];
+	}
+	
+	public int get(int[] indices) {
+		return data[getIndex(indices)];
+	}
+	public void set(int[] indices, int value) {
+		data[getIndex(indices)] = value;
+	}
+	public int get(int index) {
+		return data[index];
+	}
+	public void set(int index, int value) {
+		data[index] = value;
+	}
+	public void fill(int initialValue) {
+		Arrays.fill(data, initialValue);
+	}
+	
+	// Elements in layout order
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		forEachIndex(index -> {
+			if (sb.length() != 1) sb.append(", ");
+			sb.append(data[index]);
+		});
+		sb.append("]");
+		return sb.toString();
+	}
+	
+}
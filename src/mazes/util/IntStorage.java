@@ -0,0 +1,16 @@
+package mazes.util;
+
+import java.io.Serializable;
+
+// A long-indexed array of ints, kept on the heap (ChunkedIntArray) or in a
+// memory-mapped file (MappedIntArray)
+public abstract class IntStorage implements Serializable {
+	
+	public static final long serialVersionUID = -7790841360412218233L;
+	
+	public abstract long getLength();
+	public abstract int get(long index);
+	public abstract void set(long index, int value);
+	public abstract void fill(int initialValue);
+	
+}
@@ -0,0 +1,54 @@
+package mazes.util;
+
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+// CellSpliterator for grids whose flat indices don't fit in an int
+public final class LongCellSpliterator extends CellCursor implements Spliterator.OfLong {
+	
+	private LongCellSpliterator(int[][][] boxes, long[] strides, long offset) {
+		super(boxes, strides, offset, null);
+	}
+	private LongCellSpliterator(LongCellSpliterator parent) {
+		super(parent);
+	}
+	
+	// For row-major grids with the given strides, whose flat indices start
+	// at offset
+	public static LongCellSpliterator interior(int[] sideLengths, long[] strides, long offset) {
+		return new LongCellSpliterator(CellCursor.interior(sideLengths), strides, offset);
+	}
+	public static LongCellSpliterator border(int[] sideLengths, long[] strides, long offset) {
+		return new LongCellSpliterator(CellCursor.border(sideLengths), strides, offset);
+	}
+	public static LongCellSpliterator face(int[] sideLengths, Direction face, long[] strides, long offset) {
+		return new LongCellSpliterator(CellCursor.face(sideLengths, face), strides, offset);
+	}
+	
+	@Override public boolean tryAdvance(LongConsumer action) {
+		if (action == null) throw new NullPointerException();
+		if (!advance()) return false;
+		action.accept(getIndex());
+		return true;
+	}
+	@Override public void forEachRemaining(LongConsumer action) {
+		if (action == null) throw new NullPointerException();
+		while (advance()) {
+			action.accept(getIndex());
+		}
+	}
+	
+	@Override public LongCellSpliterator trySplit() {
+		return canSplit() ? new LongCellSpliterator(this) : null;
+	}
+	@Override public int characteristics() {
+		return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+	
+	public LongStream stream(boolean parallel) {
+		return StreamSupport.longStream(this, parallel);
+	}
+	
+}
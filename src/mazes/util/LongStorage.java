@@ -0,0 +1,16 @@
+package mazes.util;
+
+import java.io.Serializable;
+
+// A long-indexed array of longs, kept on the heap (ChunkedLongArray) or in a
+// memory-mapped file (MappedLongArray)
+public abstract class LongStorage implements Serializable {
+	
+	public static final long serialVersionUID = 4170335879142958921L;
+	
+	public abstract long getLength();
+	public abstract long get(long index);
+	public abstract void set(long index, long value);
+	public abstract void fill(long initialValue);
+	
+}
@@ -0,0 +1,91 @@
+package mazes.util;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Bits kept in a region of a file that is mapped into memory, so that the
+// operating system pages them in and out as they are used and they can be
+// larger than the heap. The bits are little-endian longs, lowest bit first.
+// Changes reach the file when the operating system writes them back, or at
+// force(). The mapping stays valid after the channel is closed.
+//
+// Serializing one writes a ChunkedBitArray with the same bits.
+public final class MappedBitArray extends BitStorage {
+	
+	public static final long serialVersionUID = -1516532964412720694L;
+	
+	// 2^30 bytes (2^33 bits) per segment, within the 2 GiB a single mapping
+	// can cover
+	private static final int segmentBits = 33;
+	private static final long segmentMask = (1L << segmentBits) - 1;
+	private static final int segmentWordBits = segmentBits - 6;
+	private static final long segmentWordMask = (1L << segmentWordBits) - 1;
+	
+	private final long length;
+	private final transient MappedByteBuffer[] segments;
+	
+	// The region starts at position and takes getByteCount(length) bytes;
+	// mapping it read-write extends the file if need be.
+	public MappedBitArray(FileChannel channel, FileChannel.MapMode mode, long position, long length) throws IOException {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		long byteCount = getByteCount(length);
+		this.segments = new MappedByteBuffer[(int) ((byteCount + (segmentMask >>> 3)) >>> (segmentBits - 3))];
+		for (int s=0; s<segments.length; s++) {
+			long offset = (long) s << (segmentBits - 3);
+			segments[s] = channel.map(mode, position + offset, Math.min(byteCount - offset, 1L << (segmentBits - 3)));
+			segments[s].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	public static long getByteCount(long length) {
+		return (length + 63) >>> 6 << 3;
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public boolean get(long index) {
+		return (getWord(index >>> 6) & (1L << index)) != 0;
+	}
+	@Override public void set(long index, boolean value) {
+		long word = getWord(index >>> 6);
+		setWord(index >>> 6, value ? word | 1L << index : word & ~(1L << index));
+	}
+	@Override public void fill(boolean initialValue) {
+		long wordCount = getWordCount();
+		for (long word=0; word<wordCount; word++) {
+			setWord(word, initialValue ? -1L : 0L);
+		}
+		// Bits past the end stay clear (see getWord)
+		if (initialValue && (length & 63) != 0) {
+			setWord(wordCount - 1, -1L >>> -length);
+		}
+	}
+	
+	@Override protected long getWord(long word) {
+		return segments[(int) (word >>> segmentWordBits)].getLong((int) (word & segmentWordMask) << 3);
+	}
+	private void setWord(long word, long value) {
+		segments[(int) (word >>> segmentWordBits)].putLong((int) (word & segmentWordMask) << 3, value);
+	}
+	
+	// Writes any changes back to the file
+	public void force() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+	
+	private Object writeReplace() throws ObjectStreamException {
+		ChunkedBitArray copy = new ChunkedBitArray(length);
+		for (long word=0; word<getWordCount(); word++) {
+			copy.setWord(word, getWord(word));
+		}
+		return copy;
+	}
+	
+}
@@ -0,0 +1,70 @@
+package mazes.util;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Ints kept in a region of a file that is mapped into memory (see
+// MappedBitArray), as little-endian ints.
+//
+// Serializing one writes a ChunkedIntArray with the same values.
+public final class MappedIntArray extends IntStorage {
+	
+	public static final long serialVersionUID = 2897455020368931720L;
+	
+	// 2^28 ints (2^30 bytes) per segment
+	private static final int segmentBits = 28;
+	private static final long segmentMask = (1L << segmentBits) - 1;
+	
+	private final long length;
+	private final transient MappedByteBuffer[] segments;
+	
+	// The region starts at position and takes getByteCount(length) bytes
+	public MappedIntArray(FileChannel channel, FileChannel.MapMode mode, long position, long length) throws IOException {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		this.segments = new MappedByteBuffer[(int) ((length + segmentMask) >>> segmentBits)];
+		for (int s=0; s<segments.length; s++) {
+			long offset = (long) s << segmentBits;
+			segments[s] = channel.map(mode, position + offset * 4, Math.min(length - offset, 1L << segmentBits) * 4);
+			segments[s].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	public static long getByteCount(long length) {
+		return length * 4;
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public int get(long index) {
+		return segments[(int) (index >>> segmentBits)].getInt((int) (index & segmentMask) << 2);
+	}
+	@Override public void set(long index, int value) {
+		segments[(int) (index >>> segmentBits)].putInt((int) (index & segmentMask) << 2, value);
+	}
+	@Override public void fill(int initialValue) {
+		for (long index=0; index<length; index++) {
+			set(index, initialValue);
+		}
+	}
+	
+	// Writes any changes back to the file
+	public void force() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+	
+	private Object writeReplace() throws ObjectStreamException {
+		ChunkedIntArray copy = new ChunkedIntArray(length);
+		for (long index=0; index<length; index++) {
+			copy.set(index, get(index));
+		}
+		return copy;
+	}
+	
+}
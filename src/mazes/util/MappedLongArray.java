@@ -0,0 +1,70 @@
+package mazes.util;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Longs kept in a region of a file that is mapped into memory (see
+// MappedBitArray), as little-endian longs.
+//
+// Serializing one writes a ChunkedLongArray with the same values.
+public final class MappedLongArray extends LongStorage {
+	
+	public static final long serialVersionUID = 6602317745983126143L;
+	
+	// 2^27 longs (2^30 bytes) per segment
+	private static final int segmentBits = 27;
+	private static final long segmentMask = (1L << segmentBits) - 1;
+	
+	private final long length;
+	private final transient MappedByteBuffer[] segments;
+	
+	// The region starts at position and takes getByteCount(length) bytes
+	public MappedLongArray(FileChannel channel, FileChannel.MapMode mode, long position, long length) throws IOException {
+		if (length < 0) throw new IllegalArgumentException();
+		this.length = length;
+		this.segments = new MappedByteBuffer[(int) ((length + segmentMask) >>> segmentBits)];
+		for (int s=0; s<segments.length; s++) {
+			long offset = (long) s << segmentBits;
+			segments[s] = channel.map(mode, position + offset * 8, Math.min(length - offset, 1L << segmentBits) * 8);
+			segments[s].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+	public static long getByteCount(long length) {
+		return length * 8;
+	}
+	
+	@Override public long getLength() {
+		return length;
+	}
+	
+	@Override public long get(long index) {
+		return segments[(int) (index >>> segmentBits)].getLong((int) (index & segmentMask) << 3);
+	}
+	@Override public void set(long index, long value) {
+		segments[(int) (index >>> segmentBits)].putLong((int) (index & segmentMask) << 3, value);
+	}
+	@Override public void fill(long initialValue) {
+		for (long index=0; index<length; index++) {
+			set(index, initialValue);
+		}
+	}
+	
+	// Writes any changes back to the file
+	public void force() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+	
+	private Object writeReplace() throws ObjectStreamException {
+		ChunkedLongArray copy = new ChunkedLongArray(length);
+		for (long index=0; index<length; index++) {
+			copy.set(index, get(index));
+		}
+		return copy;
+	}
+	
+}
@@ -14,6 +14,10 @@ import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -93,6 +97,35 @@ public final class MazeIO {
 		}
 	}
 	
+	// Names of the saved mazes (.chmz and .maze files), sorted
+	public static List<String> listMazes() {
+		File folder = new File("mazes/");
+		if (!folder.isDirectory()) folder = new File("../mazes/");
+		String[] names = folder.list((dir, name) -> name.endsWith(".chmz") || name.endsWith(".maze"));
+		if (names == null) return new ArrayList<>();
+		Arrays.sort(names);
+		return new ArrayList<>(Arrays.asList(names));
+	}
+	
+	public static List<String> loadLines(String fileName, boolean printErrors) {
+		Throwable e1 = null, e2 = null;
+		for (String pathName : new String[] {"mazes/", "../mazes/"}) {
+			try {
+				return Files.readAllLines(Paths.get(pathName + fileName));
+			}
+			catch (IOException e) {
+				if (e1 == null) e1 = e;
+				else e2 = e;
+			}
+		}
+		if (printErrors) {
+			System.out.printf("Received errors while trying to load '%s':%n", fileName);
+			e1.printStackTrace(System.out);
+			e2.printStackTrace(System.out);
+		}
+		return null;
+	}
+	
 	public static boolean fileExists(String mazeName) {
 		return fileExists(mazeName, "mazes/") || fileExists(mazeName, "../mazes/");
 	}
@@ -0,0 +1,102 @@
+package mazes.util;
+
+import java.io.Serializable;
+
+// Z-order indexing. The bits of the coordinates are interleaved, lowest bits
+// first, so that cells close together in every dimension are close together
+// in memory. Dimensions whose side lengths need fewer bits drop out of the
+// interleaving once their bits run out, so codes run up to the product of
+// the side lengths rounded up to powers of two; codes whose coordinates are
+// out of range are holes.
+final class MortonCode implements Serializable {
+	
+	public static final long serialVersionUID = -4460381726091938537L;
+	
+	private final int[] sideLengths;
+	// The bits of each dimension's coordinates within a code
+	private final int[] masks;
+	// spreads[d][c] is coordinate c of dimension d moved into its bits
+	private final int[][] spreads;
+	private final int capacity;
+	
+	MortonCode(int[] sideLengths) {
+		int dimensionCount = sideLengths.length;
+		this.sideLengths = sideLengths;
+		this.masks = new int[dimensionCount];
+		this.spreads = new int[dimensionCount][];
+		int[] bitCounts = new int[dimensionCount];
+		int totalBits = 0;
+		boolean isEmpty = false;
+		for (int d=0; d<dimensionCount; d++) {
+			bitCounts[d] = 32 - Integer.numberOfLeadingZeros(Math.max(sideLengths[d] - 1, 0));
+			totalBits += bitCounts[d];
+			isEmpty |= sideLengths[d] == 0;
+		}
+		if (totalBits > 30) throw new IllegalArgumentException();
+		for (int level=0, position=0; position<totalBits; level++) {
+			for (int d=0; d<dimensionCount; d++) {
+				if (level < bitCounts[d]) {
+					masks[d] |= 1 << position++;
+				}
+			}
+		}
+		for (int d=0; d<dimensionCount; d++) {
+			spreads[d] = new int[sideLengths[d]];
+			for (int c=0; c<sideLengths[d]; c++) {
+				spreads[d][c] = deposit(c, masks[d]);
+			}
+		}
+		this.capacity = isEmpty ? 0 : 1 << totalBits;
+	}
+	
+	// Number of codes, including holes
+	int getCapacity() {
+		return capacity;
+	}
+	// The indices must be in range.
+	int encode(int[] indices) {
+		int code = 0;
+		for (int d=0; d<indices.length; d++) {
+			code |= spreads[d][indices[d]];
+		}
+		return code;
+	}
+	int getCoordinate(int code, int dimension) {
+		int mask = masks[dimension];
+		int coordinate = 0;
+		for (int bit=0; mask!=0; bit++, mask&=mask-1) {
+			if ((code & Integer.lowestOneBit(mask)) != 0) coordinate |= 1 << bit;
+		}
+		return coordinate;
+	}
+	// Depositing preserves order, so coordinates can be compared without
+	// extracting them
+	boolean isFirst(int code, int dimension) {
+		return (code & masks[dimension]) == 0;
+	}
+	boolean isLast(int code, int dimension) {
+		return (code & masks[dimension]) == spreads[dimension][sideLengths[dimension] - 1];
+	}
+	boolean isHole(int code) {
+		for (int d=0; d<masks.length; d++) {
+			if ((code & masks[d]) > spreads[d][sideLengths[d] - 1]) return true;
+		}
+		return false;
+	}
+	// Code of the neighbor along a dimension; adding or subtracting within
+	// the dimension's bits carries straight across the other dimensions'
+	int step(int code, int dimension, boolean isPositive) {
+		int mask = masks[dimension];
+		int stepped = isPositive ? (code | ~mask) + 1 : (code & mask) - 1;
+		return (stepped & mask) | (code & ~mask);
+	}
+	
+	private static int deposit(int value, int mask) {
+		int result = 0;
+		for (int bit=0; mask!=0; bit++, mask&=mask-1) {
+			if ((value & (1 << bit)) != 0) result |= Integer.lowestOneBit(mask);
+		}
+		return result;
+	}
+	
+}
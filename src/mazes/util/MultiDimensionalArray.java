@@ -1,77 +1,136 @@
 package mazes.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 
+// Flat indices address elements in the array's layout (see ArrayLayout); in
+// the default row-major layout the first dimension varies fastest. The
+// shape and indexing are an ArrayShape's, shared with the primitive arrays.
 public final class MultiDimensionalArray<T> implements Serializable {
 	
 	public static final long serialVersionUID = -5377388193057183350L;
 	
+	// These are the fields arrays have always been saved with; the shape is
+	// made from them again on reading
 	private final int[] sideLengths;
 	public final int dimensionCount;
 	
 	private final int[] cumulativeRowLengths;
 	public final int totalLength;
 	
+	// null in the row-major layout (and in arrays saved before there were
+	// other layouts)
+	private final MortonCode morton;
+	
 	private final T[] data;
 	
-	@SuppressWarnings("unchecked")
+	// (not final so that readObject can fill it in)
+	private transient ArrayShape shape;
+	
 	public MultiDimensionalArray(int[] sideLengths) {
-		if (sideLengths == null) throw new NullPointerException();
-		if (sideLengths.length == 0) throw new IllegalArgumentException();
-		
+		this(sideLengths, ArrayLayout.ROW_MAJOR);
+	}
+	@SuppressWarnings("unchecked")
+	public MultiDimensionalArray(int[] sideLengths, ArrayLayout layout) {
+		this.shape = new ArrayShape(sideLengths, layout);
 		this.sideLengths = sideLengths;
-		this.dimensionCount = sideLengths.length;
-		
-		this.cumulativeRowLengths = new int[dimensionCount];
-		int cumulativeRowLength = 1;
-		for (int i=0; i<dimensionCount; i++) {
-			cumulativeRowLengths[i] = cumulativeRowLength;
-			cumulativeRowLength *= sideLengths[i];
-		}
-		this.totalLength = cumulativeRowLength;
-		
-		this.data = (T[]) new Object[totalLength];
+		this.dimensionCount = shape.dimensionCount;
+		this.cumulativeRowLengths = shape.getCumulativeRowLengths();
+		this.totalLength = shape.totalLength;
+		this.morton = shape.getMortonCode();
+		this.data = (T[]) new Object[shape.getFlatLength()];
 	}
 	
+	public ArrayShape getShape() {
+		return shape;
+	}
 	public int getSideLength(int index) {
-		return sideLengths[index];
+		return shape.getSideLength(index);
 	}
 	public int[] getSideLengths() {
-		return Arrays.copyOf(sideLengths, dimensionCount);
+		return shape.getSideLengths();
+	}
+	public ArrayLayout getLayout() {
+		return shape.getLayout();
+	}
+	
+	// Difference between the flat indices of neighbors along a dimension
+	// (row-major layout only)
+	public int getStride(int dimension) {
+		return shape.getStride(dimension);
 	}
 	
 	public boolean isValidIndex(int[] indices) {
-		try {
-			indicesToIndex(indices);
-			return true;
-		}
-		catch (IndexOutOfBoundsException e) {
-			return false;
-		}
+		return shape.isValidIndex(indices);
+	}
+	// Flat index of the element at the given indices, or -1 if they are out
+	// of bounds
+	public int indexOf(int[] indices) {
+		return shape.indexOf(indices);
+	}
+	public int[] getIndices(int index) {
+		return shape.getIndices(index);
+	}
+	public int[] getIndices(int index, int[] indices) {
+		return shape.getIndices(index, indices);
+	}
+	// Flat index of the neighbor in the given direction (see
+	// Direction.getIndex()), or -1 if it is outside the array
+	public int getNeighborIndex(int index, int direction) {
+		return shape.getNeighborIndex(index, direction);
+	}
+	// Visits the flat index of every element, in the order they are laid out
+	// in memory
+	public void forEachIndex(IntConsumer action) {
+		shape.forEachIndex(action);
+	}
+	// Lazy iteration over flat indices (see CellSpliterator): every element,
+	// the elements on the border, or those on one face
+	public CellSpliterator getInteriorCells() {
+		return shape.getInteriorCells();
 	}
+	public CellSpliterator getBorderCells() {
+		return shape.getBorderCells();
+	}
+	public CellSpliterator getFaceCells(Direction face) {
+		return shape.getFaceCells(face);
+	}
+	// Differences between the flat indices of neighbors, in
+	// Direction.getIndex() order; only meaningful away from the edges (and
+	// only in the row-major layout)
+	public int[] getNeighborOffsets() {
+		return shape.getNeighborOffsets();
+	}
+	
 	public T get(int[] indices) {
 		return data[indicesToIndex(indices)];
 	}
 	public void set(int[] indices, T obj) {
-		data[indicesToIndex(indices) ] = obj;
+		data[indicesToIndex(indices)] = obj;
+	}
+	// By flat index, without validating anything but the array bounds, for
+	// inner loops
+	public T get(int index) {
+		return data[index];
+	}
+	public void set(int index, T obj) {
+		data[index] = obj;
 	}
 	public void fill(T initialValue) {
-		for (int i=0; i<totalLength; i++) {
-			data[i] = initialValue;
-		}
+		forEachIndex(i -> data[i] = initialValue);
 	}
 	public void fill(Supplier<T> initialValue) {
 		if (initialValue == null) throw new NullPointerException();
-		for (int i=0; i<totalLength; i++) {
-			data[i] = initialValue.get();
-		}
+		forEachIndex(i -> data[i] = initialValue.get());
 	}
 	
-	private static boolean isInterior(int[] index, int[] sideLengths) {
+	public static boolean isInterior(int[] index, int[] sideLengths) {
 		int dimensionCount = sideLengths.length;
 		if (index == null) throw new NullPointerException();
 		if (index.length != dimensionCount) throw new IllegalArgumentException();
@@ -82,7 +141,7 @@ public final class MultiDimensionalArray<T> implements Serializable {
 		}
 		return true;
 	}
-	private static boolean isInteriorOrBorder(int[] index, int[] sideLengths) {
+	public static boolean isInteriorOrBorder(int[] index, int[] sideLengths) {
 		int dimensionCount = sideLengths.length;
 		if (index == null) throw new NullPointerException();
 		if (index.length != dimensionCount) throw new IllegalArgumentException();
@@ -94,7 +153,7 @@ public final class MultiDimensionalArray<T> implements Serializable {
 		}
 		return violations < 2;
 	}
-	private static boolean isInsideBorder(int[] index, int[] sideLengths) {
+	public static boolean isInsideBorder(int[] index, int[] sideLengths) {
 		int dimensionCount = sideLengths.length;
 		if (index == null) throw new NullPointerException();
 		if (index.length != dimensionCount) throw new IllegalArgumentException();
@@ -110,15 +169,22 @@ public final class MultiDimensionalArray<T> implements Serializable {
 		return violations >= 1 && violations <= dimensionCount;
 	}
 	public boolean isInterior(int[] index) {
-		return MultiDimensionalArray.isInterior(index, sideLengths);
+		return shape.isInterior(index);
 	}
 	public boolean isInteriorOrBorder(int[] index) {
-		return MultiDimensionalArray.isInteriorOrBorder(index, sideLengths);
+		return shape.isInteriorOrBorder(index);
 	}
 	public boolean isInsideBorder(int[] index) {
-		return MultiDimensionalArray.isInsideBorder(index, sideLengths);
+		return shape.isInsideBorder(index);
 	}
 	public Direction getDirectionIntoGrid(int[] index) {
+		return shape.getDirectionIntoGrid(index);
+	}
+	public Direction getDirectionOutOfGrid(int[] index) {
+		return shape.getDirectionOutOfGrid(index);
+	}
+	public static Direction getDirectionIntoGrid(int[] index, int[] sideLengths) {
+		int dimensionCount = sideLengths.length;
 		if (index == null) throw new NullPointerException();
 		if (index.length != dimensionCount) throw new IllegalArgumentException();
 		for (int d=0; d<dimensionCount; d++) {
@@ -131,7 +197,8 @@ public final class MultiDimensionalArray<T> implements Serializable {
 		}
 		throw new IllegalArgumentException();
 	}
-	public Direction getDirectionOutOfGrid(int[] index) {
+	public static Direction getDirectionOutOfGrid(int[] index, int[] sideLengths) {
+		int dimensionCount = sideLengths.length;
 		if (index == null) throw new NullPointerException();
 		if (index.length != dimensionCount) throw new IllegalArgumentException();
 		for (int d=0; d<dimensionCount; d++) {
@@ -192,16 +259,7 @@ public final class MultiDimensionalArray<T> implements Serializable {
 	}
 	
 	private int indicesToIndex(int[] indices) {
-		if (indices == null) throw new NullPointerException();
-		if (indices.length != dimensionCount) throw new IllegalArgumentException();
-		int index = 0;
-		for (int i=0; i<dimensionCount; i++) {
-			if (indices[i] < 0 || indices[i] >= sideLengths[i]) {
-				throw new IndexOutOfBoundsException();
-			}
-			index += indices[i] * cumulativeRowLengths[i];
-		}
-		return index;
+		return shape.getIndex(indices);
 	}
 	
 	@Override public String toString() {
@@ -225,4 +283,9 @@ public final class MultiDimensionalArray<T> implements Serializable {
 		}
 	}
 	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		shape = new ArrayShape(sideLengths, morton);
+	}
+	
 }